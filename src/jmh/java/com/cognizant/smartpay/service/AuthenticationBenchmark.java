@@ -0,0 +1,109 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tap costs outside the matcher: template hashing and Base64 decoding on the
+ * fingerprint path, and WebAuthn assertion verification with a cached public key
+ * (the normal case) versus decoding the stored key on every tap
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+    private static final String RP_ID = "smartpay.example";
+    private static final String CREDENTIAL_ID = "benchmark";
+    private static final long USER_ID = 1L;
+
+    @Param({"400", "1024"})
+    public int templateLength;
+
+    private String templateBase64;
+
+    private WebAuthnVerifier verifier;
+    private WebAuthnVerifier decodingVerifier;
+    private byte[] authenticatorData;
+    private byte[] clientDataJson;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        templateBase64 = Base64.getEncoder().encodeToString(new SyntheticTemplates(3).random(templateLength));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        byte[] storedKey = keyPair.getPublic().getEncoded();
+        Optional<CredentialCache.Credential> cached = Optional.of(
+                new CredentialCache.Credential(1L, USER_ID, WebAuthnPublicKey.parse(storedKey), 0));
+        List<String> origins = List.of("https://" + RP_ID);
+        verifier = new WebAuthnVerifier(id -> cached, RP_ID, origins, true);
+        decodingVerifier = new WebAuthnVerifier(id -> {
+            try {
+                return Optional.of(new CredentialCache.Credential(1L, USER_ID, WebAuthnPublicKey.parse(storedKey), 0));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }, RP_ID, origins, true);
+
+        // rpIdHash || flags (UP | UV) || signCount
+        authenticatorData = new byte[37];
+        byte[] rpIdHash = MessageDigest.getInstance("SHA-256").digest(RP_ID.getBytes(StandardCharsets.UTF_8));
+        System.arraycopy(rpIdHash, 0, authenticatorData, 0, rpIdHash.length);
+        authenticatorData[32] = 0x05;
+        clientDataJson = ("{\"type\":\"webauthn.get\",\"challenge\":\"q2Xv0n8kPbenchmark\","
+                + "\"origin\":\"https://" + RP_ID + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        Signature signer = Signature.getInstance("SHA256withECDSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(authenticatorData);
+        signer.update(MessageDigest.getInstance("SHA-256").digest(clientDataJson));
+        signature = signer.sign();
+    }
+
+    @Benchmark
+    public String generateHash() {
+        return BiometricService.generateHash(templateBase64);
+    }
+
+    @Benchmark
+    public byte[] decodeTemplate() {
+        return Base64.getDecoder().decode(templateBase64);
+    }
+
+    @Benchmark
+    public String verifyAssertionCachedKey() {
+        return verifier.verify(CREDENTIAL_ID, USER_ID, authenticatorData, clientDataJson, signature);
+    }
+
+    @Benchmark
+    public String verifyAssertionDecodingKey() {
+        return decodingVerifier.verify(CREDENTIAL_ID, USER_ID, authenticatorData, clientDataJson, signature);
+    }
+}
@@ -0,0 +1,146 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Checkout throughput with one commit per payment (direct) versus group commit,
+ * for a burst of concurrent checkouts.
+ *
+ * The database is simulated: each payment spends workMicros on its statements,
+ * and a commit holds the (single) redo log for commitMicros to model the flush.
+ * Absolute numbers are not MySQL's, but the ratio shows how much of a burst is
+ * commit-bound and what batching commits buys at a given flush latency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    @Param({"direct", "group"})
+    public String mode;
+
+    @Param({"500", "2000"})
+    public long commitMicros;
+
+    @Param({"50"})
+    public long workMicros;
+
+    private TransactionTemplate transactionTemplate;
+    private GroupCommitExecutor groupCommitExecutor;
+    private TransactionCallback<Long> payment;
+    private final AtomicLong payments = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionTemplate = new TransactionTemplate(new SimulatedLogTransactionManager(commitMicros));
+        groupCommitExecutor = new GroupCommitExecutor(transactionTemplate, "group".equals(mode), 3000, 64, 2, 10000);
+        groupCommitExecutor.start();
+        payment = status -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(workMicros));
+            return payments.incrementAndGet();
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        groupCommitExecutor.stop();
+    }
+
+    @Benchmark
+    public Long checkout() {
+        return groupCommitExecutor.isEnabled()
+                ? groupCommitExecutor.execute(payment)
+                : transactionTemplate.execute(payment);
+    }
+
+    /**
+     * Transactions whose commit occupies a shared log for a fixed time; savepoints are free
+     */
+    private static final class SimulatedLogTransactionManager implements PlatformTransactionManager {
+
+        private final long commitNanos;
+        private final ReentrantLock log = new ReentrantLock();
+
+        SimulatedLogTransactionManager(long commitMicros) {
+            this.commitNanos = TimeUnit.MICROSECONDS.toNanos(commitMicros);
+        }
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimulatedStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            log.lock();
+            try {
+                LockSupport.parkNanos(commitNanos);
+            } finally {
+                log.unlock();
+            }
+            ((SimulatedStatus) status).setCompleted();
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            ((SimulatedStatus) status).setCompleted();
+        }
+    }
+
+    private static final class SimulatedStatus extends AbstractTransactionStatus {
+
+        private static final SavepointManager SAVEPOINTS = new SavepointManager() {
+            @Override
+            public Object createSavepoint() {
+                return new Object();
+            }
+
+            @Override
+            public void rollbackToSavepoint(Object savepoint) {
+            }
+
+            @Override
+            public void releaseSavepoint(Object savepoint) {
+            }
+        };
+
+        @Override
+        public boolean isNewTransaction() {
+            return true;
+        }
+
+        @Override
+        protected SavepointManager getSavepointManager() {
+            return SAVEPOINTS;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1:N identification over a synthetic gallery.
+ *
+ * identify measures the match engine alone; externalScannerTap adds what
+ * authenticateExternalScanner does on top of it per tap (Base64 decoding of the
+ * captured template and bucket selection), without the database lookups. A
+ * probe similarity below the match threshold makes every tap a full scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class IdentificationBenchmark {
+
+    private static final String DEVICE_TYPE = "benchmark-scanner";
+    private static final int MATCH_THRESHOLD = 85;
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    @Param({"400", "1024"})
+    public int templateLength;
+
+    @Param({"0.95", "0.5"})
+    public double probeSimilarity;
+
+    @Param({"first", "best"})
+    public String mode;
+
+    @Param({"vector"})
+    public String matcher;
+
+    private BiometricGallery gallery;
+    private TemplateMatchEngine engine;
+    private byte[] probe;
+    private String probeBase64;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticTemplates templates = new SyntheticTemplates(7);
+        gallery = templates.gallery(gallerySize, templateLength, DEVICE_TYPE);
+        engine = SyntheticTemplates.engine(SyntheticTemplates.matcher(matcher), mode);
+
+        // Probe a template from the middle of the gallery so first-match mode is not trivially fast
+        byte[] enrolled = new byte[templateLength];
+        gallery.candidates(templateLength, DEVICE_TYPE).get(0).copyTemplate(gallerySize / 2, enrolled, 0);
+        probe = templates.similarTo(enrolled, probeSimilarity);
+        probeBase64 = Base64.getEncoder().encodeToString(probe);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public IdentificationResult identify() {
+        return engine.identify(gallery.candidates(templateLength, DEVICE_TYPE), probe, MATCH_THRESHOLD);
+    }
+
+    @Benchmark
+    public IdentificationResult externalScannerTap() {
+        byte[] captured = Base64.getDecoder().decode(probeBase64);
+        List<BiometricGallery.Snapshot> candidates = gallery.candidates(captured.length, null);
+        return engine.identify(candidates, captured, MATCH_THRESHOLD);
+    }
+}
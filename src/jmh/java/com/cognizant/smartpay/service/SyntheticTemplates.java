@@ -0,0 +1,101 @@
+package com.cognizant.smartpay.service;
+
+import java.lang.reflect.Field;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic fingerprint templates and galleries for the benchmarks.
+ *
+ * Templates are random bytes; a probe with similarity s keeps a fraction s of
+ * the bytes of its base template and replaces the rest with different values,
+ * so the byte matcher scores it at about s * 100 against its base and at about
+ * 100 / 256 against unrelated templates.
+ */
+final class SyntheticTemplates {
+
+    private final SplittableRandom random;
+
+    SyntheticTemplates(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    byte[] random(int length) {
+        byte[] template = new byte[length];
+        for (int i = 0; i < length; i++) {
+            template[i] = (byte) random.nextInt(256);
+        }
+        return template;
+    }
+
+    /**
+     * Copy of the base template with a fraction (1 - similarity) of its bytes changed
+     */
+    byte[] similarTo(byte[] base, double similarity) {
+        byte[] probe = base.clone();
+        int changes = (int) Math.round(base.length * (1.0 - similarity));
+        // Partial Fisher-Yates over the positions so each one changes at most once
+        int[] positions = new int[base.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        for (int i = 0; i < changes; i++) {
+            int j = i + random.nextInt(positions.length - i);
+            int position = positions[j];
+            positions[j] = positions[i];
+            probe[position] = (byte) (base[position] + 1 + random.nextInt(255));
+        }
+        return probe;
+    }
+
+    /**
+     * Gallery of the given size with one template per user; biometric and user IDs start at 1
+     */
+    BiometricGallery gallery(int size, int templateLength, String deviceType) {
+        BiometricGallery gallery = new BiometricGallery(null);
+        setField(gallery, "lshTables", 8);
+        setField(gallery, "lshBandSize", 6);
+        for (long id = 1; id <= size; id++) {
+            gallery.add(id, id, deviceType, random(templateLength));
+        }
+        return gallery;
+    }
+
+    /**
+     * Match engine configured like the application defaults, with the given mode
+     */
+    static TemplateMatchEngine engine(TemplateMatcher matcher, String mode) {
+        return new TemplateMatchEngine(matcher, 0, 4096, true, mode, 5, 3, 0);
+    }
+
+    /**
+     * Matcher by configuration name (scalar, vector or packed)
+     */
+    static TemplateMatcher matcher(String name) {
+        switch (name) {
+            case "scalar":
+                return new ScalarTemplateMatcher();
+            case "packed":
+                return new PackedTemplateMatcher(PackedTemplateMatcher.Calibration.CHANCE);
+            case "vector":
+                try {
+                    return (TemplateMatcher) Class.forName("com.cognizant.smartpay.service.VectorTemplateMatcher")
+                            .getDeclaredConstructor()
+                            .newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new IllegalStateException("Vector matcher needs the vector profile (-P benchmarks,vector)", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown matcher: " + name);
+        }
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + name, e);
+        }
+    }
+}
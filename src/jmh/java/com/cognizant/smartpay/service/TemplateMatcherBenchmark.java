@@ -0,0 +1,63 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring one captured template against one stored template, per matcher
+ * and template length, for heap and memory-mapped (direct buffer) storage
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class TemplateMatcherBenchmark {
+
+    @Param({"scalar", "vector", "packed"})
+    public String matcher;
+
+    @Param({"256", "512", "1024"})
+    public int templateLength;
+
+    @Param({"0.9"})
+    public double similarity;
+
+    private TemplateMatcher templateMatcher;
+    private byte[] probe;
+    private byte[] stored;
+    private ByteBuffer mapped;
+
+    @Setup
+    public void setUp() {
+        SyntheticTemplates templates = new SyntheticTemplates(42);
+        templateMatcher = SyntheticTemplates.matcher(matcher);
+        stored = templates.random(templateLength);
+        probe = templates.similarTo(stored, similarity);
+        mapped = ByteBuffer.allocateDirect(templateLength);
+        mapped.put(stored).flip();
+    }
+
+    @Benchmark
+    public int scoreHeap() {
+        return templateMatcher.score(probe, stored, 0, templateLength);
+    }
+
+    @Benchmark
+    public int scoreMapped() {
+        return templateMatcher.score(probe, mapped, 0, templateLength);
+    }
+}
@@ -41,6 +41,9 @@ public class CorsConfig {
             config.setAllowedHeaders(Arrays.asList(allowedHeaders.split(",")));
         }
         
+        // Let kiosks read the credential feed ETag
+        config.addExposedHeader("ETag");
+        
         // Allow credentials
         config.setAllowCredentials(true);
         
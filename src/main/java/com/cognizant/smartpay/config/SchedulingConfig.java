@@ -0,0 +1,12 @@
+package com.cognizant.smartpay.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled maintenance tasks (e.g. periodic credential filter rebuilds)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
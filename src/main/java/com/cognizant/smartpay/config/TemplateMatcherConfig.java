@@ -0,0 +1,122 @@
+package com.cognizant.smartpay.config;
+
+import com.cognizant.smartpay.service.PackedTemplateMatcher;
+import com.cognizant.smartpay.service.ScalarTemplateMatcher;
+import com.cognizant.smartpay.service.TemplateMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Selects the fingerprint template matcher used by the match engine.
+ *
+ * The byte encoding uses the Vector API matcher when it was built in (vector
+ * profile) and the jdk.incubator.vector module is available (start the JVM with
+ * --add-modules jdk.incubator.vector), and falls back to the scalar matcher otherwise.
+ */
+@Configuration
+@Slf4j
+public class TemplateMatcherConfig {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_MATCHER = "com.cognizant.smartpay.service.VectorTemplateMatcher";
+
+    // Random template pairs the vector matcher must score exactly like the scalar one
+    private static final int SELF_CHECK_ROUNDS = 256;
+
+    @Value("${app.biometric.template-encoding:bytes}")
+    private String encoding;
+
+    @Value("${app.biometric.packed-calibration:chance}")
+    private String calibration;
+
+    @Value("${app.biometric.matcher:auto}")
+    private String matcher;
+
+    @Bean
+    public TemplateMatcher templateMatcher() {
+        TemplateMatcher selected = select();
+        log.info("Using {} fingerprint template matcher", selected.name());
+        return selected;
+    }
+
+    private TemplateMatcher select() {
+        if ("packed".equalsIgnoreCase(encoding)) {
+            return new PackedTemplateMatcher(
+                    PackedTemplateMatcher.Calibration.valueOf(calibration.trim().toUpperCase()));
+        }
+        if (!"bytes".equalsIgnoreCase(encoding)) {
+            throw new IllegalArgumentException("Unsupported template encoding: " + encoding);
+        }
+
+        ScalarTemplateMatcher scalar = new ScalarTemplateMatcher();
+        if ("scalar".equalsIgnoreCase(matcher)) {
+            return scalar;
+        }
+
+        boolean required = "vector".equalsIgnoreCase(matcher);
+        if (!required && !"auto".equalsIgnoreCase(matcher)) {
+            throw new IllegalArgumentException("Unsupported template matcher: " + matcher);
+        }
+
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            if (required) {
+                throw new IllegalStateException("Vector matcher requires --add-modules " + VECTOR_MODULE);
+            }
+            return scalar;
+        }
+
+        try {
+            TemplateMatcher vector = (TemplateMatcher) Class.forName(VECTOR_MATCHER)
+                    .getDeclaredConstructor()
+                    .newInstance();
+            if (agrees(vector, scalar)) {
+                return vector;
+            }
+            log.warn("Vector matcher disagrees with scalar matcher, falling back to scalar");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector matcher unavailable, falling back to scalar: {}", e.getMessage());
+        }
+
+        if (required) {
+            throw new IllegalStateException("Vector matcher could not be enabled");
+        }
+        return scalar;
+    }
+
+    /**
+     * Differential check over random templates of varying length and similarity
+     */
+    private static boolean agrees(TemplateMatcher candidate, TemplateMatcher reference) {
+        Random random = new Random(SELF_CHECK_ROUNDS);
+
+        for (int round = 0; round < SELF_CHECK_ROUNDS; round++) {
+            int length = 1 + random.nextInt(2048);
+            int offset = random.nextInt(64);
+            byte[] template = new byte[length];
+            byte[] data = new byte[offset + length];
+            random.nextBytes(template);
+            random.nextBytes(data);
+
+            // Copy a random share of the template so scores cover the whole 0-100 range
+            int copied = random.nextInt(length + 1);
+            System.arraycopy(template, 0, data, offset, copied);
+
+            int expected = reference.score(template, data, offset, length);
+            if (candidate.score(template, data, offset, length) != expected) {
+                return false;
+            }
+
+            // Mapped gallery snapshots are scored through the buffer overload
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data);
+            if (candidate.score(template, buffer, offset, length) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
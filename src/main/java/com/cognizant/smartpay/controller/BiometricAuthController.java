@@ -6,6 +6,8 @@ import com.cognizant.smartpay.service.BiometricService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -106,22 +108,70 @@ public class BiometricAuthController {
         }
     }
 
+    /**
+     * Issue a single-use challenge for the next WebAuthn assertion
+     *
+     * POST /api/auth/challenge
+     */
+    @PostMapping("/challenge")
+    public ResponseEntity<ChallengeResponse> issueChallenge() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(biometricService.issueChallenge());
+    }
+
     /**
      * Get all registered credential IDs for WebAuthn authentication
      *
      * GET /api/auth/credentials
      */
     @GetMapping("/credentials")
-    public ResponseEntity<?> getCredentials() {
+    public ResponseEntity<?> getCredentials(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            java.util.List<String> credentials = biometricService.getAllActiveCredentials();
-            return ResponseEntity.ok(credentials);
+            CredentialFeedResponse feed = biometricService.getCredentialChanges(null);
+            String etag = "\"" + feed.getCursor() + "\"";
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok().eTag(etag).body(feed.getAdded());
         } catch (Exception e) {
             log.error("Failed to get credentials", e);
             return ResponseEntity.ok(java.util.Collections.emptyList());
         }
     }
 
+    /**
+     * Credential IDs added and revoked since the cursor of the previous poll
+     *
+     * GET /api/auth/credentials/changes?since={cursor}
+     */
+    @GetMapping("/credentials/changes")
+    public ResponseEntity<CredentialFeedResponse> getCredentialChanges(
+            @RequestParam(value = "since", required = false) String since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CredentialFeedResponse feed = biometricService.getCredentialChanges(since);
+        String etag = "\"" + feed.getCursor() + "\"";
+        // Only a client that presents the current cursor learns that nothing changed
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(feed);
+    }
+
+    /**
+     * Credential IDs of one user, for the allowCredentials list of a WebAuthn assertion
+     *
+     * POST /api/auth/credentials/lookup
+     */
+    @PostMapping("/credentials/lookup")
+    public ResponseEntity<java.util.Map<String, Object>> lookupCredentials(
+            @Valid @RequestBody CredentialLookupRequest request) {
+        // Unknown users get an empty list, not an error, so the endpoint cannot be used to probe for accounts
+        java.util.List<String> credentials = biometricService.getCredentialsForIdentifier(request.getIdentifier());
+        return ResponseEntity.ok(java.util.Map.of("credentials", credentials));
+    }
+
     /**
      * Health check endpoint
      *
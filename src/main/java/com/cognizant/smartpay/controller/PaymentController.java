@@ -1,5 +1,6 @@
 package com.cognizant.smartpay.controller;
 
+import com.cognizant.smartpay.service.PaymentIdempotency;
 import com.cognizant.smartpay.service.PaymentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,33 +19,57 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class PaymentController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final PaymentService paymentService;
+    private final PaymentIdempotency paymentIdempotency;
 
     /**
      * Process payment for user's cart
      * POST /api/payment/process
+     *
+     * With an Idempotency-Key header, retries with the same key get the first
+     * request's response instead of paying again.
      */
     @PostMapping("/process")
-    public ResponseEntity<?> processPayment(@RequestBody Map<String, Long> request) {
+    public ResponseEntity<?> processPayment(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestBody Map<String, Long> request) {
         Long userId = request.get("userId");
 
         log.info("Processing payment request for user: {}", userId);
 
+        if (idempotencyKey == null || idempotencyKey.isBlank() || userId == null) {
+            PaymentIdempotency.Response response = process(userId, null);
+            return ResponseEntity.status(response.getStatus()).body(response.getBody());
+        }
+
+        String key = idempotencyKey.trim();
+        PaymentIdempotency.Response response = paymentIdempotency.execute(userId, key, () -> process(userId, key));
+        if (response.isReplayed()) {
+            log.info("Replayed payment response for user {} and Idempotency-Key {}", userId, key);
+        }
+        return ResponseEntity.status(response.getStatus())
+            .header("Idempotent-Replayed", String.valueOf(response.isReplayed()))
+            .body(response.getBody());
+    }
+
+    private PaymentIdempotency.Response process(Long userId, String idempotencyKey) {
         try {
-            Map<String, Object> result = paymentService.processPayment(userId);
-            return ResponseEntity.ok(result);
+            Map<String, Object> result = paymentService.processPayment(userId, idempotencyKey);
+            return new PaymentIdempotency.Response(200, result, false);
         } catch (IllegalArgumentException e) {
             log.error("Payment validation error for user {}: {}", userId, e.getMessage());
-            return ResponseEntity.badRequest().body(Map.of(
+            return new PaymentIdempotency.Response(400, Map.of(
                 "error", e.getMessage(),
                 "status", "failed"
-            ));
+            ), false);
         } catch (Exception e) {
             log.error("Payment processing error for user {}: {}", userId, e.getMessage());
-            return ResponseEntity.internalServerError().body(Map.of(
+            return new PaymentIdempotency.Response(500, Map.of(
                 "error", "Payment processing failed",
                 "status", "failed"
-            ));
+            ), false);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.dto.ShardIdentifyRequest;
+import com.cognizant.smartpay.dto.ShardIdentifyResponse;
+import com.cognizant.smartpay.dto.ShardTemplateRequest;
+import com.cognizant.smartpay.service.ShardedIdentifier;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Base64;
+
+/**
+ * Node-to-node endpoints for the gallery shard held by this node.
+ *
+ * Only used when app.biometric.sharding.enabled is set (404 otherwise), and
+ * every call must carry the shared X-Shard-Token.
+ */
+@RestController
+@RequestMapping("/internal/shards")
+@RequiredArgsConstructor
+public class ShardController {
+
+    private static final String TOKEN_HEADER = "X-Shard-Token";
+
+    private final ShardedIdentifier shardedIdentifier;
+
+    /**
+     * Identify a probe within this node's shard
+     *
+     * POST /internal/shards/identify
+     */
+    @PostMapping("/identify")
+    public ResponseEntity<ShardIdentifyResponse> identify(
+            @RequestHeader(value = TOKEN_HEADER, required = false) String token,
+            @Valid @RequestBody ShardIdentifyRequest request) {
+
+        HttpStatus refused = refuse(token);
+        if (refused != null) {
+            return ResponseEntity.status(refused).build();
+        }
+
+        byte[] probe = Base64.getDecoder().decode(request.getProbe());
+        return ResponseEntity.ok(ShardedIdentifier.toResponse(
+                shardedIdentifier.identifyLocal(probe, request.getDeviceType(), request.getThreshold())));
+    }
+
+    /**
+     * Add an enrolled template to this node's shard
+     *
+     * POST /internal/shards/templates
+     */
+    @PostMapping("/templates")
+    public ResponseEntity<Void> addTemplate(
+            @RequestHeader(value = TOKEN_HEADER, required = false) String token,
+            @Valid @RequestBody ShardTemplateRequest request) {
+
+        HttpStatus refused = refuse(token);
+        if (refused != null) {
+            return ResponseEntity.status(refused).build();
+        }
+
+        shardedIdentifier.addLocal(request.getBiometricId(), request.getUserId(), request.getDeviceType(),
+                Base64.getDecoder().decode(request.getTemplate()));
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Remove a deactivated template from this node's shard
+     *
+     * DELETE /internal/shards/templates/{biometricId}
+     */
+    @DeleteMapping("/templates/{biometricId}")
+    public ResponseEntity<Void> removeTemplate(
+            @RequestHeader(value = TOKEN_HEADER, required = false) String token,
+            @PathVariable Long biometricId) {
+
+        HttpStatus refused = refuse(token);
+        if (refused != null) {
+            return ResponseEntity.status(refused).build();
+        }
+
+        shardedIdentifier.removeLocal(biometricId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private HttpStatus refuse(String token) {
+        if (!shardedIdentifier.isEnabled()) {
+            return HttpStatus.NOT_FOUND;
+        }
+        return shardedIdentifier.isTrusted(token) ? null : HttpStatus.FORBIDDEN;
+    }
+}
@@ -1,5 +1,8 @@
 package com.cognizant.smartpay.controller;
 
+import com.cognizant.smartpay.dto.ChallengeResponse;
+import com.cognizant.smartpay.dto.CredentialFeedResponse;
+import com.cognizant.smartpay.dto.CredentialLookupRequest;
 import com.cognizant.smartpay.dto.FingerprintAuthRequest;
 import com.cognizant.smartpay.entity.User;
 import com.cognizant.smartpay.entity.Wallet;
@@ -11,8 +14,11 @@ import com.cognizant.smartpay.repository.WalletTransactionRepository;
 import com.cognizant.smartpay.service.AddWalletService;
 import com.cognizant.smartpay.service.BiometricService;
 import com.cognizant.smartpay.service.TransactionLookupService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -45,14 +51,22 @@ public class WalletController {
 
 
     @GetMapping("/credentials")
-    public ResponseEntity<?> getActiveCredentials() {
+    public ResponseEntity<?> getActiveCredentials(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            List<String> credentials = biometricService.getAllActiveCredentials();
+            CredentialFeedResponse feed = biometricService.getCredentialChanges(null);
+            String etag = "\"" + feed.getCursor() + "\"";
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+
+            List<String> credentials = feed.getAdded();
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("credentials", credentials);
             response.put("count", credentials.size());
-            return ResponseEntity.ok(response);
+            response.put("cursor", feed.getCursor());
+            return ResponseEntity.ok().eTag(etag).body(response);
         } catch (Exception e) {
             log.error("Error retrieving credentials", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -60,6 +74,52 @@ public class WalletController {
         }
     }
 
+    /**
+     * Credential IDs added and revoked since the cursor of the previous poll
+     *
+     * GET /api/wallet/credentials/changes?since={cursor}
+     */
+    @GetMapping("/credentials/changes")
+    public ResponseEntity<CredentialFeedResponse> getCredentialChanges(
+            @RequestParam(value = "since", required = false) String since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CredentialFeedResponse feed = biometricService.getCredentialChanges(since);
+        String etag = "\"" + feed.getCursor() + "\"";
+        // Only a client that presents the current cursor learns that nothing changed
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(feed);
+    }
+
+    /**
+     * Credential IDs of one user, for the allowCredentials list of a WebAuthn assertion
+     *
+     * POST /api/wallet/credentials/lookup
+     */
+    @PostMapping("/credentials/lookup")
+    public ResponseEntity<Map<String, Object>> lookupCredentials(@Valid @RequestBody CredentialLookupRequest request) {
+        // Unknown users get an empty list, not an error, so the endpoint cannot be used to probe for accounts
+        List<String> credentials = biometricService.getCredentialsForIdentifier(request.getIdentifier());
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("credentials", credentials);
+        response.put("count", credentials.size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Issue a single-use challenge for the next WebAuthn assertion
+     *
+     * POST /api/wallet/challenge
+     */
+    @PostMapping("/challenge")
+    public ResponseEntity<ChallengeResponse> issueChallenge() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(biometricService.issueChallenge());
+    }
+
     @PostMapping("/authenticate")
     public ResponseEntity<?> authenticate(@RequestBody FingerprintAuthRequest request) {
         try {
@@ -0,0 +1,17 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for an issued WebAuthn challenge (base64url) and how long it stays valid
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChallengeResponse {
+
+    private String challenge;
+    private Long timeoutMs;
+}
@@ -0,0 +1,25 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for the WebAuthn credential feed.
+ *
+ * When reset is true, added holds the complete set of active credential IDs and
+ * the kiosk replaces its list; otherwise it applies added and revoked to the list
+ * it holds for the cursor it sent. The returned cursor is sent with the next poll.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CredentialFeedResponse {
+
+    private String cursor;
+    private Boolean reset;
+    private List<String> added;
+    private List<String> revoked;
+}
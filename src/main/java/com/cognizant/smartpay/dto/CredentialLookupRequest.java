@@ -0,0 +1,20 @@
+package com.cognizant.smartpay.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for looking up the WebAuthn credentials of one user
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CredentialLookupRequest {
+
+    @NotBlank(message = "Email or phone is required")
+    @Size(max = 255, message = "Identifier is too long")
+    private String identifier;
+}
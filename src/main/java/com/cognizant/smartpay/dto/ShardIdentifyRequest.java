@@ -0,0 +1,23 @@
+package com.cognizant.smartpay.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for identifying a template within one gallery shard (node to node)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardIdentifyRequest {
+
+    /** Captured template, Base64 */
+    @NotBlank
+    private String probe;
+
+    private String deviceType;
+
+    private Integer threshold;
+}
@@ -0,0 +1,30 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the identification result of one gallery shard (node to node)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardIdentifyResponse {
+
+    private String status;
+    private ShardMatch best;
+    private ShardMatch runnerUp;
+    private Long comparisons;
+    private Boolean timedOut;
+    private Long elapsedMicros;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ShardMatch {
+        private Long biometricId;
+        private Long userId;
+        private Integer score;
+    }
+}
@@ -0,0 +1,28 @@
+package com.cognizant.smartpay.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for adding an enrolled template to the gallery shard that owns it (node to node)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardTemplateRequest {
+
+    @NotNull
+    private Long biometricId;
+
+    @NotNull
+    private Long userId;
+
+    private String deviceType;
+
+    /** Template, Base64 */
+    @NotBlank
+    private String template;
+}
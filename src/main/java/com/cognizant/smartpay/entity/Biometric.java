@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 @Table(name = "biometrics", indexes = {
     @Index(name = "idx_user_id", columnList = "user_id"),
     @Index(name = "idx_credential_id", columnList = "credential_id"),
-    @Index(name = "idx_device_type", columnList = "device_type")
+    @Index(name = "idx_device_type", columnList = "device_type"),
+    @Index(name = "idx_enrolled_at", columnList = "enrolled_at")
 })
 @Data
 @NoArgsConstructor
@@ -58,6 +59,10 @@ public class Biometric {
     @Column(name = "verification_count", nullable = false)
     private Integer verificationCount = 0;
 
+    // Highest WebAuthn signature counter seen; stays 0 for authenticators without a counter
+    @Column(name = "sign_count", nullable = false)
+    private Long signCount = 0L;
+
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
 
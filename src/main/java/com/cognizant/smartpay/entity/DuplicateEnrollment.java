@@ -0,0 +1,58 @@
+package com.cognizant.smartpay.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DuplicateEnrollment Entity - A fingerprint enrollment that matched another user's template
+ */
+@Entity
+@Table(name = "duplicate_enrollments", indexes = {
+    @Index(name = "idx_duplicate_biometric_id", columnList = "biometric_id"),
+    @Index(name = "idx_duplicate_matched_user_id", columnList = "matched_user_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DuplicateEnrollment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "duplicate_id")
+    private Long duplicateId;
+
+    @Column(name = "biometric_id", nullable = false)
+    private Long biometricId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "matched_biometric_id", nullable = false)
+    private Long matchedBiometricId;
+
+    @Column(name = "matched_user_id", nullable = false)
+    private Long matchedUserId;
+
+    @Column(name = "score", nullable = false)
+    private Integer score;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "action", nullable = false, length = 20)
+    private Action action;
+
+    @Column(name = "detected_at", nullable = false)
+    private LocalDateTime detectedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        detectedAt = LocalDateTime.now();
+    }
+
+    public enum Action {
+        FLAGGED, DEACTIVATED
+    }
+}
@@ -0,0 +1,30 @@
+package com.cognizant.smartpay.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * NodeIdLeaseRecord Entity - A Snowflake node ID held by a running instance until it stops renewing it
+ */
+@Entity
+@Table(name = "id_node_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeIdLeaseRecord {
+
+    @Id
+    @Column(name = "node_id")
+    private Integer nodeId;
+
+    /** Random ID of the instance holding the lease */
+    @Column(name = "holder", nullable = false, length = 36)
+    private String holder;
+
+    @Column(name = "renewed_at", nullable = false)
+    private LocalDateTime renewedAt;
+}
@@ -1,16 +1,26 @@
 package com.cognizant.smartpay.repository;
 
 import com.cognizant.smartpay.entity.Biometric;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * Repository interface for Biometric entity
+ *
+ * Loading a Biometric entity reads both BLOB columns (template and public key).
+ * Hot paths use the projections below instead, which select only the columns
+ * they need; template bytes are only read by the matching gallery, in pages.
  */
 @Repository
 public interface BiometricRepository extends JpaRepository<Biometric, Long> {
@@ -30,6 +40,81 @@ public interface BiometricRepository extends JpaRepository<Biometric, Long> {
      */
     List<Biometric> findAllByIsActive(Boolean isActive);
 
+    /**
+     * Page through active fingerprint templates with an ID above the given one (keyset pagination)
+     */
+    @Query("SELECT b.biometricId AS biometricId, b.userId AS userId, b.deviceType AS deviceType, " +
+           "b.fingerprintTemplate AS fingerprintTemplate FROM Biometric b " +
+           "WHERE b.isActive = true AND b.credentialId IS NULL AND b.biometricId > :biometricId " +
+           "ORDER BY b.biometricId ASC")
+    List<TemplateRow> findActiveTemplatesAfter(@Param("biometricId") Long biometricId, Pageable pageable);
+
+    /**
+     * Active fingerprint templates with the given IDs
+     */
+    @Query("SELECT b.biometricId AS biometricId, b.userId AS userId, b.deviceType AS deviceType, " +
+           "b.fingerprintTemplate AS fingerprintTemplate FROM Biometric b " +
+           "WHERE b.isActive = true AND b.credentialId IS NULL AND b.biometricId IN :biometricIds")
+    List<TemplateRow> findActiveTemplatesByIds(@Param("biometricIds") Collection<Long> biometricIds);
+
+    /**
+     * Fields needed to verify an assertion with an active WebAuthn credential (no template data)
+     */
+    @Query("SELECT b.biometricId AS biometricId, b.userId AS userId, b.publicKey AS publicKey, " +
+           "b.signCount AS signCount FROM Biometric b WHERE b.credentialId = :credentialId AND b.isActive = true")
+    Optional<CredentialRow> findActiveCredential(@Param("credentialId") String credentialId);
+
+    /**
+     * Metadata of a biometric without its template or key data
+     */
+    @Query("SELECT b.biometricId AS biometricId, b.userId AS userId, b.credentialId AS credentialId, " +
+           "b.isActive AS isActive FROM Biometric b WHERE b.biometricId = :biometricId")
+    Optional<StatusRow> findStatusById(@Param("biometricId") Long biometricId);
+
+    /**
+     * Deactivate a biometric in place; returns 0 when it was not active
+     */
+    @Modifying
+    @Query("UPDATE Biometric b SET b.isActive = false WHERE b.biometricId = :biometricId AND b.isActive = true")
+    int deactivate(@Param("biometricId") Long biometricId);
+
+    /**
+     * Raise the stored WebAuthn signature counter; returns 0 when the given value is not higher.
+     * Runs in its own transaction, since assertions are verified in read-only ones.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE Biometric b SET b.signCount = :signCount " +
+           "WHERE b.biometricId = :biometricId AND b.signCount < :signCount")
+    int advanceSignCount(@Param("biometricId") Long biometricId, @Param("signCount") Long signCount);
+
+    /**
+     * IDs of active fingerprint-template biometrics (not WebAuthn credentials) up to the given ID
+     */
+    @Query("SELECT b.biometricId FROM Biometric b " +
+           "WHERE b.isActive = true AND b.credentialId IS NULL AND b.biometricId <= :biometricId")
+    List<Long> findActiveTemplateIdsUpTo(@Param("biometricId") Long biometricId);
+
+    /**
+     * Credential IDs of all active WebAuthn biometrics
+     */
+    @Query("SELECT b.credentialId FROM Biometric b WHERE b.isActive = true AND b.credentialId IS NOT NULL")
+    List<String> findActiveCredentialIds();
+
+    /**
+     * Credential IDs of active WebAuthn biometrics enrolled at or after the given time
+     */
+    @Query("SELECT b.credentialId FROM Biometric b " +
+           "WHERE b.enrolledAt >= :since AND b.isActive = true AND b.credentialId IS NOT NULL")
+    List<String> findActiveCredentialIdsEnrolledSince(@Param("since") LocalDateTime since);
+
+    /**
+     * Credential IDs of a user's active WebAuthn biometrics (no template or key data)
+     */
+    @Query("SELECT b.credentialId FROM Biometric b " +
+           "WHERE b.userId = :userId AND b.isActive = true AND b.credentialId IS NOT NULL")
+    List<String> findActiveCredentialIdsByUserId(@Param("userId") Long userId);
+
     /**
      * Find biometric by user ID, device type and active status
      */
@@ -45,4 +130,34 @@ public interface BiometricRepository extends JpaRepository<Biometric, Long> {
      */
     @Query("SELECT b FROM Biometric b JOIN FETCH b.user WHERE b.credentialId = :credentialId AND b.isActive = true")
     Optional<Biometric> findByCredentialIdWithUser(@Param("credentialId") String credentialId);
+
+    /**
+     * Fingerprint template of an active biometric
+     */
+    interface TemplateRow {
+        Long getBiometricId();
+        Long getUserId();
+        String getDeviceType();
+        byte[] getFingerprintTemplate();
+    }
+
+    /**
+     * WebAuthn credential of an active biometric
+     */
+    interface CredentialRow {
+        Long getBiometricId();
+        Long getUserId();
+        byte[] getPublicKey();
+        Long getSignCount();
+    }
+
+    /**
+     * Biometric metadata without payload columns
+     */
+    interface StatusRow {
+        Long getBiometricId();
+        Long getUserId();
+        String getCredentialId();
+        Boolean getIsActive();
+    }
 }
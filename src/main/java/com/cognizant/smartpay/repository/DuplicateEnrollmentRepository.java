@@ -0,0 +1,19 @@
+package com.cognizant.smartpay.repository;
+
+import com.cognizant.smartpay.entity.DuplicateEnrollment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for DuplicateEnrollment entity
+ */
+@Repository
+public interface DuplicateEnrollmentRepository extends JpaRepository<DuplicateEnrollment, Long> {
+
+    /**
+     * Find duplicates recorded for an enrollment
+     */
+    List<DuplicateEnrollment> findByBiometricId(Long biometricId);
+}
@@ -0,0 +1,84 @@
+package com.cognizant.smartpay.repository;
+
+import com.cognizant.smartpay.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Repository interface for IdempotencyRecord entity
+ *
+ * Statuses are bound as parameters: Hibernate cannot resolve a nested enum
+ * constant written as a literal in JPQL. The default methods supply them.
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    /**
+     * Take over a claim whose execution stopped without completing; 0 when someone else holds it
+     */
+    default int takeOver(Long userId, String key, LocalDateTime lockedAt, LocalDateTime staleBefore, LocalDateTime now) {
+        return takeOver(userId, key, IdempotencyRecord.Status.IN_PROGRESS, lockedAt, staleBefore, now);
+    }
+
+    /**
+     * Store the response of a claimed key; a no-op when it is already completed
+     */
+    default int complete(Long userId, String key, int httpStatus, String body, LocalDateTime now) {
+        return complete(userId, key, IdempotencyRecord.Status.IN_PROGRESS, IdempotencyRecord.Status.COMPLETED,
+                httpStatus, body, now);
+    }
+
+    /**
+     * Drop a claim whose execution failed without effect, so a retry can run again
+     */
+    default int release(Long userId, String key) {
+        return release(userId, key, IdempotencyRecord.Status.IN_PROGRESS);
+    }
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE IdempotencyRecord r SET r.lockedAt = :now " +
+           "WHERE r.userId = :userId AND r.idempotencyKey = :key AND r.status = :claimed " +
+           "AND r.lockedAt = :lockedAt AND r.lockedAt < :staleBefore")
+    int takeOver(@Param("userId") Long userId,
+                 @Param("key") String key,
+                 @Param("claimed") IdempotencyRecord.Status claimed,
+                 @Param("lockedAt") LocalDateTime lockedAt,
+                 @Param("staleBefore") LocalDateTime staleBefore,
+                 @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE IdempotencyRecord r SET r.status = :completed, " +
+           "r.httpStatus = :httpStatus, r.responseBody = :body, r.completedAt = :now " +
+           "WHERE r.userId = :userId AND r.idempotencyKey = :key AND r.status = :claimed")
+    int complete(@Param("userId") Long userId,
+                 @Param("key") String key,
+                 @Param("claimed") IdempotencyRecord.Status claimed,
+                 @Param("completed") IdempotencyRecord.Status completed,
+                 @Param("httpStatus") int httpStatus,
+                 @Param("body") String body,
+                 @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.userId = :userId AND r.idempotencyKey = :key " +
+           "AND r.status = :claimed")
+    int release(@Param("userId") Long userId,
+                @Param("key") String key,
+                @Param("claimed") IdempotencyRecord.Status claimed);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,58 @@
+package com.cognizant.smartpay.repository;
+
+import com.cognizant.smartpay.entity.NodeIdLeaseRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repository interface for NodeIdLeaseRecord entity
+ *
+ * Node IDs are assigned, not generated, so a new lease is a plain INSERT that
+ * fails on the primary key when another instance got there first; save() would
+ * merge over the other holder instead.
+ */
+@Repository
+public interface NodeIdLeaseRepository extends JpaRepository<NodeIdLeaseRecord, Integer> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO id_node_leases (node_id, holder, renewed_at) VALUES (:nodeId, :holder, :now)",
+           nativeQuery = true)
+    int claim(@Param("nodeId") int nodeId,
+              @Param("holder") String holder,
+              @Param("now") LocalDateTime now);
+
+    /**
+     * Take over a lease its holder stopped renewing; 0 when it is still held
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE NodeIdLeaseRecord l SET l.holder = :holder, l.renewedAt = :now " +
+           "WHERE l.nodeId = :nodeId AND l.renewedAt < :staleBefore")
+    int takeOver(@Param("nodeId") int nodeId,
+                 @Param("holder") String holder,
+                 @Param("staleBefore") LocalDateTime staleBefore,
+                 @Param("now") LocalDateTime now);
+
+    /**
+     * Extend a lease; 0 when another instance has taken it over
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE NodeIdLeaseRecord l SET l.renewedAt = :now WHERE l.nodeId = :nodeId AND l.holder = :holder")
+    int renew(@Param("nodeId") int nodeId,
+              @Param("holder") String holder,
+              @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NodeIdLeaseRecord l WHERE l.nodeId = :nodeId AND l.holder = :holder")
+    int release(@Param("nodeId") int nodeId,
+                @Param("holder") String holder);
+}
@@ -2,6 +2,8 @@ package com.cognizant.smartpay.repository;
 
 import com.cognizant.smartpay.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -54,4 +56,24 @@ public interface UserRepository extends JpaRepository<User, Long> {
         }
         return findByEmailIgnoreCaseAndPassword(identifier, password);
     }
+
+    /**
+     * Find only the user ID by email (case-insensitive)
+     */
+    @Query("SELECT u.userId FROM User u WHERE LOWER(u.email) = LOWER(:email)")
+    Optional<Long> findUserIdByEmail(@Param("email") String email);
+
+    /**
+     * Find only the user ID by phone number
+     */
+    @Query("SELECT u.userId FROM User u WHERE u.phone = :phone")
+    Optional<Long> findUserIdByPhone(@Param("phone") String phone);
+
+    default Optional<Long> findUserIdByIdentifier(String identifier) {
+        boolean looksLikePhone = identifier.matches("^\\+?\\d{10,15}$");
+        if (looksLikePhone) {
+            return findUserIdByPhone(identifier);
+        }
+        return findUserIdByEmail(identifier);
+    }
 }
\ No newline at end of file
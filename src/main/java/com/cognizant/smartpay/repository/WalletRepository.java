@@ -4,12 +4,16 @@ import com.cognizant.smartpay.entity.Wallet;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import org.springframework.data.jpa.repository.Modifying;
+
 import org.springframework.data.jpa.repository.Query;
 
 import org.springframework.data.repository.query.Param;
 
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+
 import java.util.Optional;
 
 /**
@@ -48,4 +52,30 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
 
     Optional<Wallet> findWalletByUserId(@Param("userId") Long userId);
 
+    /**
+
+     * Add to the balance in place, so a top-up never overwrites a concurrent checkout debit
+
+     */
+
+    @Modifying(clearAutomatically = true)
+
+    @Query("UPDATE Wallet w SET w.balance = COALESCE(w.balance, 0) + :amount, w.updatedAt = LOCAL DATETIME " +
+           "WHERE w.userId = :userId")
+
+    int credit(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+    /**
+
+     * Subtract from the balance only if it covers the amount; 0 rows updated means insufficient balance
+
+     */
+
+    @Modifying(clearAutomatically = true)
+
+    @Query("UPDATE Wallet w SET w.balance = w.balance - :amount, w.updatedAt = LOCAL DATETIME " +
+           "WHERE w.userId = :userId AND w.balance >= :amount")
+
+    int debit(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
 }
@@ -118,17 +118,19 @@ public class AddWalletService {
 
         log.info("Adding {} to wallet for userId: {}", amount, userId);
 
-        Wallet wallet = getOrCreateWallet(userId);
+        getOrCreateWallet(userId);
 
-        BigDecimal newBalance = wallet.getBalance().add(amount);
+        // Credit in place so a concurrent checkout debit is never overwritten
 
-        wallet.setBalance(newBalance);
+        if (walletRepository.credit(userId, amount) != 1) {
 
-        wallet.setUpdatedAt(LocalDateTime.now());
+            throw new IllegalStateException("Wallet of user " + userId + " could not be credited");
 
-        wallet = walletRepository.save(wallet);
+        }
 
-        log.info("Money added. New balance: {}", newBalance);
+        Wallet wallet = walletRepository.findByUserId(userId).orElseThrow();
+
+        log.info("Money added. New balance: {}", wallet.getBalance());
 
         return wallet;
 
@@ -146,23 +148,19 @@ public class AddWalletService {
 
         log.info("Deducting {} from wallet for userId: {}", amount, userId);
 
-        Wallet wallet = getOrCreateWallet(userId);
+        getOrCreateWallet(userId);
+
+        // The balance check and the debit are one guarded UPDATE; no row is updated when the balance is short
 
-        if (wallet.getBalance().compareTo(amount) < 0) {
+        if (walletRepository.debit(userId, amount) == 0) {
 
             throw new RuntimeException("Insufficient balance");
 
         }
 
-        BigDecimal newBalance = wallet.getBalance().subtract(amount);
-
-        wallet.setBalance(newBalance);
-
-        wallet.setUpdatedAt(LocalDateTime.now());
-
-        wallet = walletRepository.save(wallet);
+        Wallet wallet = walletRepository.findByUserId(userId).orElseThrow();
 
-        log.info("Money deducted. New balance: {}", newBalance);
+        log.info("Money deducted. New balance: {}", wallet.getBalance());
 
         return wallet;
 
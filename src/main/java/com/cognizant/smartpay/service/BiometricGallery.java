@@ -0,0 +1,654 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resident gallery of active fingerprint templates used for 1:N matching.
+ *
+ * Templates are loaded once at startup and then kept in sync by enrollment and
+ * deactivation, so a scan never has to read the biometrics table.
+ *
+ * The gallery is bucketed by template length and device type. Templates of a
+ * different length can never match, so a scan only visits the buckets of the
+ * captured template's length (and, optionally, of the scanner's device type).
+ * Within a bucket entries are stored column-wise: primitive id arrays plus one
+ * packed byte array with a fixed stride of one template length.
+ *
+ * Each bucket also maintains an {@link LshIndex} so a scan can score only the
+ * templates that collide with the captured one instead of the whole bucket.
+ *
+ * Readers work on immutable {@link Snapshot}s; writers append past the end of
+ * the shared arrays and then publish a new snapshot, so scans never block.
+ *
+ * With app.biometric.sharding.enabled the gallery only keeps the templates its
+ * shard owns on the {@link ShardRing}; identification fans out to every shard
+ * (see {@link ShardedIdentifier}).
+ *
+ * With app.biometric.snapshot.enabled the gallery is also written to a
+ * {@link GallerySnapshotFile} (after a full load and on shutdown). On the next
+ * start the file is memory-mapped and matched in place, and only rows changed
+ * since its high-water biometric_id are read from the database.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BiometricGallery {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Largest byte[] the JVM reliably allocates
+    private static final int MAX_BUCKET_BYTES = Integer.MAX_VALUE - 8;
+    private static final int PAGE_SIZE = 500;
+    static final long REMOVED = 0L;
+
+    private final BiometricRepository biometricRepository;
+
+    @Value("${app.biometric.lsh.tables:8}")
+    private int lshTables;
+
+    @Value("${app.biometric.lsh.band-size:6}")
+    private int lshBandSize;
+
+    @Value("${app.biometric.snapshot.enabled:false}")
+    private boolean snapshotEnabled;
+
+    @Value("${app.biometric.snapshot.path:data/biometric-gallery.snap}")
+    private String snapshotPath;
+
+    @Value("${app.biometric.snapshot.verify-checksum:true}")
+    private boolean verifySnapshotChecksum;
+
+    @Value("${app.biometric.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @Value("${app.biometric.sharding.shard-count:1}")
+    private int shardCount;
+
+    @Value("${app.biometric.sharding.shard-index:0}")
+    private int shardIndex;
+
+    @Value("${app.biometric.sharding.virtual-nodes:128}")
+    private int shardVirtualNodes;
+
+    // Only templates this shard owns are kept; null when the gallery is not sharded
+    private ShardRing shardRing;
+
+    // Published bucket snapshots, replaced as a whole on every write
+    private volatile List<Snapshot> snapshots = Collections.emptyList();
+
+    // Writer-side state, guarded by "this"
+    private final Map<BucketKey, Bucket> buckets = new HashMap<>();
+    private final Map<Long, BucketKey> bucketByBiometricId = new HashMap<>();
+    private long highWaterId;
+
+    // Serializes snapshot file writes (shutdown may race a write after startup)
+    private final Object snapshotFileLock = new Object();
+
+    /**
+     * Load all active templates, from the snapshot file when there is a usable one
+     */
+    @PostConstruct
+    public void load() {
+        long started = System.currentTimeMillis();
+
+        if (shardingEnabled && shardRing == null) {
+            shardRing = new ShardRing(shardCount, shardVirtualNodes);
+            log.info("Biometric gallery holds shard {} of {}", shardIndex, shardCount);
+        }
+
+        if (snapshotEnabled && restoreSnapshot()) {
+            log.info("Biometric gallery warm-started with {} templates in {} buckets in {} ms",
+                    size(), buckets.size(), System.currentTimeMillis() - started);
+            return;
+        }
+
+        int loaded = loadAfter(0L);
+        log.info("Biometric gallery loaded {} templates into {} buckets in {} ms",
+                loaded, buckets.size(), System.currentTimeMillis() - started);
+
+        if (snapshotEnabled) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Write the snapshot file for the next start
+     */
+    @PreDestroy
+    public void saveSnapshot() {
+        if (snapshotEnabled) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * An in-process gallery holding one shard, loaded from the database by {@link #load()}
+     * (used by the local shard transport; the snapshot file is not used)
+     */
+    static BiometricGallery shard(BiometricRepository biometricRepository, int lshTables, int lshBandSize,
+                                  ShardRing shardRing, int shardIndex) {
+        BiometricGallery gallery = new BiometricGallery(biometricRepository);
+        gallery.lshTables = lshTables;
+        gallery.lshBandSize = lshBandSize;
+        gallery.shardRing = shardRing;
+        gallery.shardIndex = shardIndex;
+        return gallery;
+    }
+
+    /**
+     * Whether this gallery keeps the template with the given ID
+     */
+    boolean owns(long biometricId) {
+        return shardRing == null || shardRing.shardOf(biometricId) == shardIndex;
+    }
+
+    int lshTables() {
+        return lshTables;
+    }
+
+    int lshBandSize() {
+        return lshBandSize;
+    }
+
+    /**
+     * Add active templates with an ID above the given one (keyset pagination)
+     */
+    private int loadAfter(long lastId) {
+        int loaded = 0;
+
+        List<BiometricRepository.TemplateRow> page;
+        do {
+            page = biometricRepository.findActiveTemplatesAfter(lastId, PageRequest.of(0, PAGE_SIZE));
+            for (BiometricRepository.TemplateRow row : page) {
+                if (add(row.getBiometricId(), row.getUserId(), row.getDeviceType(), row.getFingerprintTemplate())) {
+                    loaded++;
+                }
+                lastId = row.getBiometricId();
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        return loaded;
+    }
+
+    /**
+     * Map the snapshot file and catch up with the database. Returns false when there is
+     * no usable snapshot and the gallery has to be loaded from scratch.
+     */
+    private boolean restoreSnapshot() {
+        Path path = Path.of(snapshotPath);
+        if (!Files.isRegularFile(path)) {
+            log.info("No biometric gallery snapshot at {}, loading from the database", path);
+            return false;
+        }
+
+        GallerySnapshotFile.Contents contents;
+        try {
+            contents = GallerySnapshotFile.read(path, verifySnapshotChecksum);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring biometric gallery snapshot {}: {}", path, e.getMessage());
+            return false;
+        }
+
+        synchronized (this) {
+            for (GallerySnapshotFile.Bucket mapped : contents.buckets) {
+                BucketKey key = new BucketKey(mapped.templateLength, mapped.deviceType);
+                buckets.put(key, new Bucket(mapped, lshTables, lshBandSize));
+                for (long biometricId : mapped.biometricIds) {
+                    bucketByBiometricId.put(biometricId, key);
+                }
+            }
+            highWaterId = contents.highWaterId;
+            publish();
+        }
+
+        int restored = size();
+        int changes = catchUp(contents.highWaterId);
+        log.info("Biometric gallery mapped {} templates from {} (written at high-water ID {}), {} changes since",
+                restored, path, contents.highWaterId, changes);
+
+        if (changes > 0) {
+            writeSnapshot();
+        }
+        return true;
+    }
+
+    /**
+     * Apply database changes made after a snapshot with the given high-water ID was written.
+     * Templates are never updated in place, so the changes are new rows, deactivated rows,
+     * and rows below the high-water mark that committed after the snapshot was taken.
+     */
+    private int catchUp(long snapshotHighWaterId) {
+        int changes = loadAfter(snapshotHighWaterId);
+
+        // ID-only query: no template BLOBs are read for rows the snapshot already has
+        Set<Long> active = new HashSet<>(biometricRepository.findActiveTemplateIdsUpTo(snapshotHighWaterId));
+        List<Long> missing = new ArrayList<>();
+
+        synchronized (this) {
+            List<Long> stale = new ArrayList<>();
+            for (Long biometricId : bucketByBiometricId.keySet()) {
+                if (!owns(biometricId) || (biometricId <= snapshotHighWaterId && !active.contains(biometricId))) {
+                    stale.add(biometricId);
+                }
+            }
+            for (Long biometricId : stale) {
+                removeInternal(biometricId);
+            }
+            for (Long biometricId : active) {
+                if (owns(biometricId) && !bucketByBiometricId.containsKey(biometricId)) {
+                    missing.add(biometricId);
+                }
+            }
+            if (!stale.isEmpty()) {
+                publish();
+            }
+            changes += stale.size();
+        }
+
+        for (int i = 0; i < missing.size(); i += PAGE_SIZE) {
+            List<Long> ids = missing.subList(i, Math.min(missing.size(), i + PAGE_SIZE));
+            for (BiometricRepository.TemplateRow row : biometricRepository.findActiveTemplatesByIds(ids)) {
+                if (add(row.getBiometricId(), row.getUserId(), row.getDeviceType(), row.getFingerprintTemplate())) {
+                    changes++;
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    private void writeSnapshot() {
+        List<Snapshot> current;
+        long highWater;
+        synchronized (this) {
+            current = snapshots;
+            highWater = highWaterId;
+        }
+
+        synchronized (snapshotFileLock) {
+            long started = System.currentTimeMillis();
+            Path path = Path.of(snapshotPath);
+            try {
+                GallerySnapshotFile.write(path, highWater, current);
+                log.info("Biometric gallery snapshot written to {} at high-water ID {} in {} ms",
+                        path, highWater, System.currentTimeMillis() - started);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not write biometric gallery snapshot {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bucket snapshots that can hold a match for a template of the given length.
+     * A null device type selects the buckets of every device type.
+     */
+    public List<Snapshot> candidates(int templateLength, String deviceType) {
+        String device = deviceType == null ? null : normalize(deviceType);
+        List<Snapshot> result = new ArrayList<>(2);
+
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.templateLength == templateLength
+                    && (device == null || device.equals(snapshot.deviceType))
+                    && !snapshot.isEmpty()) {
+                result.add(snapshot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Snapshots of all buckets
+     */
+    public List<Snapshot> snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Number of live templates in the gallery
+     */
+    public int size() {
+        int size = 0;
+        for (Snapshot snapshot : snapshots) {
+            size += snapshot.liveCount;
+        }
+        return size;
+    }
+
+    /**
+     * Add (or replace) a template. Returns false when there is no template to match against,
+     * e.g. for WebAuthn credentials which store an empty template, or another shard owns it.
+     */
+    public synchronized boolean add(Long biometricId, Long userId, String deviceType, byte[] template) {
+        if (biometricId == null || biometricId == REMOVED || userId == null
+                || template == null || template.length == 0 || !owns(biometricId)) {
+            return false;
+        }
+
+        removeInternal(biometricId);
+
+        BucketKey key = new BucketKey(template.length, normalize(deviceType));
+        Bucket bucket = buckets.computeIfAbsent(key,
+                k -> new Bucket(k.getTemplateLength(), k.getDeviceType(), lshTables, lshBandSize));
+        bucket.append(biometricId, userId, template);
+        bucketByBiometricId.put(biometricId, key);
+        highWaterId = Math.max(highWaterId, biometricId);
+
+        publish();
+        return true;
+    }
+
+    /**
+     * Remove a template, e.g. after deactivation
+     */
+    public synchronized void remove(Long biometricId) {
+        if (removeInternal(biometricId)) {
+            publish();
+        }
+    }
+
+    private boolean removeInternal(Long biometricId) {
+        BucketKey key = bucketByBiometricId.remove(biometricId);
+        if (key == null) {
+            return false;
+        }
+        Bucket bucket = buckets.get(key);
+        bucket.remove(biometricId);
+        if (bucket.snapshot.liveCount == 0) {
+            buckets.remove(key);
+        }
+        return true;
+    }
+
+    private void publish() {
+        List<Snapshot> published = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets.values()) {
+            published.add(bucket.snapshot);
+        }
+        snapshots = Collections.unmodifiableList(published);
+    }
+
+    private static String normalize(String deviceType) {
+        return deviceType == null ? "" : deviceType.trim();
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class BucketKey {
+        private final int templateLength;
+        private final String deviceType;
+    }
+
+    /**
+     * Writer-side state of one bucket
+     */
+    private static final class Bucket {
+
+        private final int templateLength;
+        private final String deviceType;
+        private final int lshTables;
+        private final int lshBandSize;
+        private final Map<Long, Integer> slotByBiometricId = new HashMap<>();
+        private LshIndex lsh;
+        private Snapshot snapshot;
+        private int removedCount;
+
+        Bucket(int templateLength, String deviceType, int lshTables, int lshBandSize) {
+            this.templateLength = templateLength;
+            this.deviceType = deviceType;
+            this.lshTables = lshTables;
+            this.lshBandSize = lshBandSize;
+            this.lsh = newLshIndex();
+            this.snapshot = new Snapshot(templateLength, deviceType, 0, 0,
+                    new long[0], new long[0], null, 0, new byte[0], lshView());
+        }
+
+        /**
+         * Bucket over a mapped snapshot file section; templates enrolled later go to the heap
+         */
+        Bucket(GallerySnapshotFile.Bucket mapped, int lshTables, int lshBandSize) {
+            this.templateLength = mapped.templateLength;
+            this.deviceType = mapped.deviceType;
+            this.lshTables = lshTables;
+            this.lshBandSize = lshBandSize;
+            this.lsh = newLshIndex();
+
+            byte[] template = new byte[templateLength];
+            for (int slot = 0; slot < mapped.count; slot++) {
+                slotByBiometricId.put(mapped.biometricIds[slot], slot);
+                if (lsh != null) {
+                    mapped.data.get(slot * templateLength, template, 0, templateLength);
+                    lsh.add(slot, template, 0);
+                }
+            }
+
+            this.snapshot = new Snapshot(templateLength, deviceType, mapped.count, mapped.count,
+                    mapped.biometricIds, mapped.userIds, mapped.data, mapped.count, new byte[0], lshView());
+        }
+
+        private LshIndex newLshIndex() {
+            return lshTables > 0 && lshBandSize > 0 ? new LshIndex(templateLength, lshTables, lshBandSize) : null;
+        }
+
+        private LshIndex.View lshView() {
+            return lsh != null ? lsh.view() : null;
+        }
+
+        void append(long biometricId, long userId, byte[] template) {
+            Snapshot current = snapshot;
+            int slot = current.count;
+            int heapSlot = slot - current.mappedCount;
+            long[] biometricIds = current.biometricIds;
+            long[] userIds = current.userIds;
+            byte[] data = current.data;
+
+            if (slot == biometricIds.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, biometricIds.length + (biometricIds.length >> 1));
+                biometricIds = Arrays.copyOf(biometricIds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+            }
+            if ((long) (heapSlot + 1) * templateLength > data.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, heapSlot + (heapSlot >> 1));
+                if ((long) capacity * templateLength > MAX_BUCKET_BYTES) {
+                    capacity = MAX_BUCKET_BYTES / templateLength;
+                    if (capacity <= heapSlot) {
+                        throw new IllegalStateException("Biometric gallery bucket is full");
+                    }
+                }
+                data = Arrays.copyOf(data, capacity * templateLength);
+            }
+
+            System.arraycopy(template, 0, data, heapSlot * templateLength, templateLength);
+            biometricIds[slot] = biometricId;
+            userIds[slot] = userId;
+            if (lsh != null) {
+                lsh.add(slot, data, heapSlot * templateLength);
+            }
+
+            slotByBiometricId.put(biometricId, slot);
+            snapshot = new Snapshot(templateLength, deviceType, slot + 1, current.liveCount + 1,
+                    biometricIds, userIds, current.mapped, current.mappedCount, data, lshView());
+        }
+
+        void remove(long biometricId) {
+            Integer slot = slotByBiometricId.remove(biometricId);
+            if (slot == null) {
+                return;
+            }
+
+            Snapshot current = snapshot;
+            current.biometricIds[slot] = REMOVED;
+            removedCount++;
+            snapshot = new Snapshot(templateLength, deviceType, current.count, current.liveCount - 1,
+                    current.biometricIds, current.userIds, current.mapped, current.mappedCount, current.data, current.lsh);
+            compactIfNeeded();
+        }
+
+        /**
+         * Rewrite the arrays without removed entries once they make up a quarter of the bucket.
+         * A mapped bucket moves to the heap here; the next snapshot file write maps it again.
+         */
+        private void compactIfNeeded() {
+            Snapshot current = snapshot;
+            if (removedCount < INITIAL_CAPACITY || removedCount < current.count / 4) {
+                return;
+            }
+
+            int capacity = Math.max(INITIAL_CAPACITY, current.liveCount + (current.liveCount >> 1));
+            // Headroom is dropped near the array limit; the live templates themselves must still fit
+            if (Math.multiplyExact((long) capacity, templateLength) > MAX_BUCKET_BYTES) {
+                capacity = Math.max(current.liveCount, MAX_BUCKET_BYTES / templateLength);
+                if (Math.multiplyExact((long) capacity, templateLength) > MAX_BUCKET_BYTES) {
+                    // Removed entries stay as tombstones; the bucket keeps working uncompacted
+                    log.warn("Biometric gallery bucket {}/{} is too large to compact into one array",
+                            templateLength, deviceType);
+                    return;
+                }
+            }
+            long[] biometricIds = new long[capacity];
+            long[] userIds = new long[capacity];
+            byte[] data = new byte[capacity * templateLength];
+
+            int count = 0;
+            slotByBiometricId.clear();
+            lsh = newLshIndex();
+            for (int i = 0; i < current.count; i++) {
+                if (current.biometricIds[i] == REMOVED) {
+                    continue;
+                }
+                current.copyTemplate(i, data, count * templateLength);
+                biometricIds[count] = current.biometricIds[i];
+                userIds[count] = current.userIds[i];
+                slotByBiometricId.put(current.biometricIds[i], count);
+                if (lsh != null) {
+                    lsh.add(count, data, count * templateLength);
+                }
+                count++;
+            }
+
+            removedCount = 0;
+            snapshot = new Snapshot(templateLength, deviceType, count, count,
+                    biometricIds, userIds, null, 0, data, lshView());
+            log.debug("Biometric gallery bucket {}/{} compacted to {} templates", templateLength, deviceType, count);
+        }
+    }
+
+    /**
+     * Immutable view of one bucket. Slots in [0, count) are stable for the lifetime of the
+     * snapshot; a slot may only turn inactive if the template is removed concurrently.
+     *
+     * Templates of slots below mappedCount are read from the mapped snapshot file, the
+     * rest from the heap array (slot - mappedCount).
+     */
+    public static final class Snapshot {
+
+        final int templateLength;
+        final String deviceType;
+        final int count;
+        final int liveCount;
+        final long[] biometricIds;
+        final long[] userIds;
+        final ByteBuffer mapped;
+        final int mappedCount;
+        final byte[] data;
+        final LshIndex.View lsh;
+
+        private Snapshot(int templateLength, String deviceType, int count, int liveCount,
+                         long[] biometricIds, long[] userIds, ByteBuffer mapped, int mappedCount,
+                         byte[] data, LshIndex.View lsh) {
+            this.templateLength = templateLength;
+            this.deviceType = deviceType;
+            this.count = count;
+            this.liveCount = liveCount;
+            this.biometricIds = biometricIds;
+            this.userIds = userIds;
+            this.mapped = mapped;
+            this.mappedCount = mappedCount;
+            this.data = data;
+            this.lsh = lsh;
+        }
+
+        public int templateLength() {
+            return templateLength;
+        }
+
+        public String deviceType() {
+            return deviceType;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return liveCount == 0;
+        }
+
+        public boolean isActive(int slot) {
+            return biometricIds[slot] != REMOVED;
+        }
+
+        public long biometricId(int slot) {
+            return biometricIds[slot];
+        }
+
+        public long userId(int slot) {
+            return userIds[slot];
+        }
+
+        /**
+         * Score the probe against the template in the given slot
+         */
+        int score(TemplateMatcher matcher, byte[] probe, int slot) {
+            if (slot < mappedCount) {
+                return matcher.score(probe, mapped, slot * templateLength, templateLength);
+            }
+            return matcher.score(probe, data, (slot - mappedCount) * templateLength, templateLength);
+        }
+
+        /**
+         * Copy the template in the given slot
+         */
+        void copyTemplate(int slot, byte[] target, int targetOffset) {
+            if (slot < mappedCount) {
+                mapped.get(slot * templateLength, target, targetOffset, templateLength);
+            } else {
+                System.arraycopy(data, (slot - mappedCount) * templateLength, target, targetOffset, templateLength);
+            }
+        }
+
+        public boolean hasLshIndex() {
+            return lsh != null;
+        }
+
+        /**
+         * Slots colliding with the probe in the LSH pre-filter, or null when the bucket has no index
+         */
+        BitSet lshCandidates(byte[] probe) {
+            return lsh != null ? lsh.candidates(probe, count) : null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.cognizant.smartpay.service;
 
+import com.cognizant.smartpay.dto.ChallengeResponse;
+import com.cognizant.smartpay.dto.CredentialFeedResponse;
 import com.cognizant.smartpay.dto.EnrollmentRequest;
 import com.cognizant.smartpay.dto.EnrollmentResponse;
 import com.cognizant.smartpay.dto.FingerprintAuthRequest;
@@ -13,8 +15,11 @@ import com.cognizant.smartpay.repository.UserRepository;
 import com.cognizant.smartpay.repository.WalletRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.security.MessageDigest;
@@ -36,12 +41,31 @@ public class BiometricService {
     private final BiometricRepository biometricRepository;
     private final UserRepository userRepository;
     private final WalletRepository walletRepository;
-
+    private final BiometricGallery biometricGallery;
+    private final TemplateMatchEngine templateMatchEngine;
+    private final IdentificationBatcher identificationBatcher;
+    private final CredentialCache credentialCache;
+    private final CredentialFeed credentialFeed;
+    private final UserCredentialCache userCredentialCache;
+    private final VerificationStatsRecorder verificationStatsRecorder;
+    private final WebAuthnVerifier webAuthnVerifier;
+    private final ChallengeStore challengeStore;
+    private final DuplicateEnrollmentDetector duplicateEnrollmentDetector;
+    private final ShardedIdentifier shardedIdentifier;
+
+    @Value("${app.biometric.match-threshold:85}")
+    private int matchThreshold;
+
+    @Value("${app.biometric.match-by-device-type:false}")
+    private boolean matchByDeviceType;
+
+    @Value("${app.webauthn.challenges.required:false}")
+    private boolean requireIssuedChallenge;
 
     /**
      * Authenticate user using fingerprint data
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public User authenticateFingerprint(FingerprintAuthRequest request) {
         log.debug("Starting fingerprint authentication");
 
@@ -54,7 +78,7 @@ public class BiometricService {
         if ("webauthn".equals(method)) {
             user = authenticateWebAuthn(fingerprintData);
         } else if ("external_usb".equals(method)) {
-            user = authenticateExternalScanner(fingerprintData);
+            user = authenticateExternalScanner(fingerprintData, deviceInfo);
         } else {
             throw new IllegalArgumentException("Unsupported authentication method: " + method);
         }
@@ -81,40 +105,24 @@ public class BiometricService {
                 throw new AuthenticationFailedException("Credential ID is required");
             }
 
-            log.info("Attempting to authenticate with credential ID: {}", credentialId);
-
-            // Find biometric record by credential ID
-            Optional<Biometric> biometricOpt = biometricRepository
-                    .findByCredentialIdAndIsActive(credentialId, true);
+            log.debug("Attempting to authenticate with credential ID: {}", credentialId);
 
-            if (!biometricOpt.isPresent()) {
-                log.warn("Credential not found: {}. Checking all active credentials...", credentialId);
-                // Debug: List all active credentials
-                List<Biometric> allBiometrics = biometricRepository.findAllByIsActive(true);
-                log.info("Total active biometrics: {}", allBiometrics.size());
-                for (Biometric b : allBiometrics) {
-                    log.info("Stored credential ID: {}", b.getCredentialId());
-                }
-                throw new BiometricNotFoundException("Credential not found or inactive");
-            }
+            // Find credential by ID (cached, including unknown IDs)
+            CredentialCache.Credential credential = credentialCache.find(credentialId)
+                    .orElseThrow(() -> new BiometricNotFoundException("Credential not found or inactive"));
 
-            Biometric biometric = biometricOpt.get();
-
-            // In production, verify signature here using WebAuthn library
-            // For now, we trust the credential ID match
-            boolean verified = verifyWebAuthnSignature(fingerprintData, biometric);
+            // Verify the assertion signature with the credential's cached public key
+            boolean verified = verifyWebAuthnSignature(fingerprintData, credential);
 
             if (!verified) {
                 throw new AuthenticationFailedException("Signature verification failed");
             }
 
-            // Update verification stats
-            biometric.setLastVerifiedAt(LocalDateTime.now());
-            biometric.setVerificationCount(biometric.getVerificationCount() + 1);
-            biometricRepository.save(biometric);
+            // Update verification stats (written behind)
+            verificationStatsRecorder.record(credential.getBiometricId());
 
             // Get user
-            User user = userRepository.findById(biometric.getUserId())
+            User user = userRepository.findById(credential.getUserId())
                     .orElseThrow(() -> new BiometricNotFoundException("User not found"));
 
             return user;
@@ -128,7 +136,7 @@ public class BiometricService {
     /**
      * Authenticate using external USB scanner
      */
-    private User authenticateExternalScanner(Map<String, Object> fingerprintData) {
+    private User authenticateExternalScanner(Map<String, Object> fingerprintData, Map<String, Object> deviceInfo) {
         log.debug("Authenticating via external scanner");
 
         try {
@@ -140,41 +148,57 @@ public class BiometricService {
 
             byte[] capturedTemplate = Base64.getDecoder().decode(templateBase64);
 
-            // Get all active enrolled fingerprints
-            List<Biometric> enrolledBiometrics = biometricRepository.findAllByIsActive(true);
-
-            if (enrolledBiometrics.isEmpty()) {
+            // A shard may be empty while others are not
+            if (!shardedIdentifier.isEnabled() && biometricGallery.size() == 0) {
                 throw new BiometricNotFoundException("No enrolled fingerprints found");
             }
 
-            // Match against each enrolled fingerprint
-            for (Biometric biometric : enrolledBiometrics) {
-                byte[] storedTemplate = biometric.getFingerprintTemplate();
+            // Only templates of the same length (and optionally the same scanner model) can match
+            String deviceType = matchByDeviceType ? (String) deviceInfo.get("deviceType") : null;
 
-                // Simple matching algorithm (in production, use vendor SDK)
-                int matchScore = matchTemplates(capturedTemplate, storedTemplate);
-
-                log.debug("Match score for user {}: {}", biometric.getUserId(), matchScore);
+            // Threshold: app.biometric.match-threshold (85% by default)
+            IdentificationResult result;
+            if (shardedIdentifier.isEnabled()) {
+                result = shardedIdentifier.identify(capturedTemplate, deviceType);
+            } else if (identificationBatcher.isEnabled()) {
+                result = identificationBatcher.identify(capturedTemplate, deviceType);
+            } else {
+                List<BiometricGallery.Snapshot> candidates = biometricGallery.candidates(capturedTemplate.length, deviceType);
+                result = templateMatchEngine.identify(candidates, capturedTemplate, matchThreshold);
+            }
 
-                // Threshold: 85%
-                if (matchScore >= 85) {
-                    // Match found!
-                    log.info("Fingerprint matched for user: {}", biometric.getUserId());
+            log.debug("Identification {} after {} comparisons in {} us{}", result.getStatus(),
+                    result.getComparisons(), result.getElapsedMicros(), result.isTimedOut() ? " (time budget exceeded)" : "");
 
-                    biometric.setLastVerifiedAt(LocalDateTime.now());
-                    biometric.setVerificationCount(biometric.getVerificationCount() + 1);
-                    biometricRepository.save(biometric);
+            if (result.getStatus() == IdentificationResult.Status.NO_MATCH) {
+                // No match found
+                log.warn("No matching fingerprint found");
+                throw new AuthenticationFailedException("Fingerprint not recognized");
+            }
 
-                    User user = userRepository.findById(biometric.getUserId())
-                            .orElseThrow(() -> new BiometricNotFoundException("User not found"));
+            if (result.getStatus() == IdentificationResult.Status.AMBIGUOUS) {
+                log.warn("Ambiguous fingerprint match between users {} ({}) and {} ({})",
+                        result.getBest().getUserId(), result.getBest().getScore(),
+                        result.getRunnerUp().getUserId(), result.getRunnerUp().getScore());
+                throw new AuthenticationFailedException("Fingerprint match is ambiguous, please scan again");
+            }
 
-                    return user;
-                }
+            if (result.getStatus() == IdentificationResult.Status.INCOMPLETE) {
+                log.warn("Fingerprint matched user {} ({}) but not every gallery shard answered",
+                        result.getBest().getUserId(), result.getBest().getScore());
+                throw new AuthenticationFailedException("Fingerprint could not be checked against every shard, please scan again");
             }
 
-            // No match found
-            log.warn("No matching fingerprint found");
-            throw new AuthenticationFailedException("Fingerprint not recognized");
+            TemplateMatchEngine.Match match = result.getBest();
+            log.info("Fingerprint matched for user: {} (score {})", match.getUserId(), match.getScore());
+
+            // Update verification stats (written behind)
+            verificationStatsRecorder.record(match.getBiometricId());
+
+            User user = userRepository.findById(match.getUserId())
+                    .orElseThrow(() -> new BiometricNotFoundException("User not found"));
+
+            return user;
 
         } catch (Exception e) {
             log.error("External scanner authentication failed", e);
@@ -183,43 +207,56 @@ public class BiometricService {
     }
 
     /**
-     * Verify WebAuthn signature (simplified version)
+     * Verify the WebAuthn assertion in the request against the credential's public key
      */
-    private boolean verifyWebAuthnSignature(Map<String, Object> fingerprintData, Biometric biometric) {
-        // In production, use Yubico WebAuthn library to verify ECDSA signature
-        // For now, we assume credential ID match is sufficient
-
-        // This is a placeholder - implement full WebAuthn verification in production
-        String signature = (String) fingerprintData.get("signature");
-        String authenticatorData = (String) fingerprintData.get("authenticatorData");
+    private boolean verifyWebAuthnSignature(Map<String, Object> fingerprintData, CredentialCache.Credential credential) {
+        byte[] authenticatorData = decodeBase64(fingerprintData.get("authenticatorData"), "authenticatorData");
+        byte[] clientDataJson = decodeBase64(fingerprintData.get("clientDataJSON"), "clientDataJSON");
+        byte[] signature = decodeBase64(fingerprintData.get("signature"), "signature");
+
+        String challenge = webAuthnVerifier.verify((String) fingerprintData.get("credentialId"), credential.getUserId(),
+                authenticatorData, clientDataJson, signature);
+
+        // Only a valid assertion uses up its challenge; the atomic remove stops replays.
+        // Issued challenges are always used up, client-generated ones pass until challenges are required
+        boolean issued = challengeStore.consume(challenge);
+        if (requireIssuedChallenge && !issued) {
+            throw new AuthenticationFailedException("Challenge is unknown, expired or already used");
+        }
 
-        return signature != null && authenticatorData != null;
+        checkSignCount(credential, WebAuthnVerifier.signCount(authenticatorData));
+        return true;
     }
 
     /**
-     * Match fingerprint templates (simplified version)
+     * Reject an assertion whose signature counter does not advance, a sign of a cloned authenticator.
+     * Authenticators without a counter always report 0, which is accepted while none was ever stored.
      */
-    private int matchTemplates(byte[] template1, byte[] template2) {
-        // This is a simplified matching algorithm
-        // In production, use vendor SDK (DigitalPersona, Mantra, etc.)
-
-        if (template1 == null || template2 == null) {
-            return 0;
+    private void checkSignCount(CredentialCache.Credential credential, long signCount) {
+        boolean advanced = signCount > 0
+                ? biometricRepository.advanceSignCount(credential.getBiometricId(), signCount) == 1
+                : credential.getSignCount() == 0;
+        if (!advanced) {
+            log.warn("Signature counter of biometric {} did not advance (got {}), possible cloned authenticator",
+                    credential.getBiometricId(), signCount);
+            throw new AuthenticationFailedException("Signature counter did not increase");
         }
+    }
 
-        if (template1.length != template2.length) {
-            return 0;
+    /**
+     * Decode a standard or URL-safe Base64 field of an assertion
+     */
+    private static byte[] decodeBase64(Object value, String field) {
+        if (!(value instanceof String encoded) || encoded.isEmpty()) {
+            throw new AuthenticationFailedException(field + " is required");
         }
-
-        // Simple byte-by-byte comparison
-        int matches = 0;
-        for (int i = 0; i < template1.length; i++) {
-            if (template1[i] == template2[i]) {
-                matches++;
-            }
+        try {
+            return encoded.indexOf('-') >= 0 || encoded.indexOf('_') >= 0
+                    ? Base64.getUrlDecoder().decode(encoded)
+                    : Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new AuthenticationFailedException(field + " is not valid Base64");
         }
-
-        return (int) ((double) matches / template1.length * 100);
     }
 
     /**
@@ -274,6 +311,8 @@ public class BiometricService {
         biometric.setEnrolledAt(LocalDateTime.now());
 
         biometric = biometricRepository.save(biometric);
+        addToGalleryAfterCommit(biometric);
+        credentialEnrolledAfterCommit(biometric.getCredentialId(), biometric.getUserId());
 
         // Update user biometric status
         user.setBiometricEnabled(true);
@@ -381,7 +420,9 @@ public class BiometricService {
             biometric.setVerificationCount(0);
             biometric.setEnrolledAt(LocalDateTime.now());
 
-            biometricRepository.save(biometric);
+            biometric = biometricRepository.save(biometric);
+            addToGalleryAfterCommit(biometric);
+            credentialEnrolledAfterCommit(biometric.getCredentialId(), biometric.getUserId());
             log.info("Biometric enrolled for user: {}", user.getUserId());
 
             // Update user biometric status
@@ -400,21 +441,118 @@ public class BiometricService {
         return user;
     }
 
+    /**
+     * Deactivate an enrolled biometric and drop it from the matching gallery
+     */
+    @Transactional
+    public void deactivateBiometric(Long biometricId) {
+        // Metadata only: the template and key BLOBs are not needed to flip the flag
+        BiometricRepository.StatusRow biometric = biometricRepository.findStatusById(biometricId)
+                .orElseThrow(() -> new BiometricNotFoundException("Biometric not found"));
+
+        if (!Boolean.TRUE.equals(biometric.getIsActive()) || biometricRepository.deactivate(biometricId) == 0) {
+            return;
+        }
+
+        afterCommit(() -> {
+            if (shardedIdentifier.isEnabled()) {
+                shardedIdentifier.removed(biometricId);
+            } else {
+                biometricGallery.remove(biometricId);
+            }
+        });
+        String credentialId = biometric.getCredentialId();
+        if (credentialId != null) {
+            afterCommit(() -> {
+                credentialCache.deactivated(credentialId);
+                credentialFeed.revoked(credentialId);
+                userCredentialCache.invalidate(biometric.getUserId());
+            });
+        }
+        log.info("Biometric {} deactivated for user: {}", biometricId, biometric.getUserId());
+    }
+
+    /**
+     * Publish a newly enrolled template to the gallery once the enrollment is committed,
+     * then queue it for the background duplicate check
+     */
+    private void addToGalleryAfterCommit(Biometric biometric) {
+        Long biometricId = biometric.getBiometricId();
+        Long userId = biometric.getUserId();
+        byte[] template = biometric.getFingerprintTemplate();
+        String deviceType = biometric.getDeviceType();
+        afterCommit(() -> {
+            boolean added = shardedIdentifier.isEnabled()
+                    ? shardedIdentifier.added(biometricId, userId, deviceType, template)
+                    : biometricGallery.add(biometricId, userId, deviceType, template);
+            if (added) {
+                duplicateEnrollmentDetector.submit(biometricId, userId, template);
+            }
+        });
+    }
+
+    /**
+     * Make a new WebAuthn credential visible to lookups once the enrollment is committed
+     */
+    private void credentialEnrolledAfterCommit(String credentialId, Long userId) {
+        if (credentialId != null) {
+            afterCommit(() -> {
+                credentialCache.enrolled(credentialId);
+                credentialFeed.added(credentialId);
+                userCredentialCache.invalidate(userId);
+            });
+        }
+    }
+
+    /**
+     * Run an action after the current transaction commits (or immediately when there is none)
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Issue a single-use challenge for a WebAuthn assertion
+     */
+    public ChallengeResponse issueChallenge() {
+        return new ChallengeResponse(challengeStore.issue(), challengeStore.getTtlMs());
+    }
+
     /**
      * Get all active credential IDs for WebAuthn authentication
      */
     public List<String> getAllActiveCredentials() {
-        List<Biometric> biometrics = biometricRepository.findAllByIsActive(true);
-        return biometrics.stream()
-                .map(Biometric::getCredentialId)
-                .filter(id -> id != null && !id.isEmpty())
-                .collect(java.util.stream.Collectors.toList());
+        return credentialFeed.activeCredentialIds();
+    }
+
+    /**
+     * Credential IDs added and revoked since the given feed cursor (all active IDs when the
+     * cursor is null, too old or from before a restart)
+     */
+    public CredentialFeedResponse getCredentialChanges(String cursor) {
+        return credentialFeed.since(cursor);
+    }
+
+    /**
+     * Active credential IDs of the user with the given email or phone (empty when there is no such user)
+     */
+    public List<String> getCredentialsForIdentifier(String identifier) {
+        return userCredentialCache.credentialIds(identifier);
     }
 
     /**
      * Generate SHA-256 hash
      */
-    private String generateHash(String input) {
+    static String generateHash(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(input.getBytes());
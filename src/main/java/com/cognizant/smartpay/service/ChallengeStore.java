@@ -0,0 +1,182 @@
+package com.cognizant.smartpay.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory store of issued WebAuthn challenges.
+ *
+ * A challenge is valid once, for the configured TTL. Issuing puts it in a
+ * ConcurrentHashMap and appends it to the slot of a hashed timing wheel for its
+ * expiry tick; consuming is a single atomic remove. Every tick the wheel drains
+ * one slot, so expiry costs O(1) per challenge with no per-entry timers, and
+ * nothing here takes a lock or touches the database.
+ *
+ * The wheel spans more than the TTL, so a challenge in the slot being drained
+ * is due unless it was issued while the tick ran late; those are put back.
+ * Challenges consumed earlier are simply no longer in the map.
+ * The number of outstanding challenges is bounded. Issuing beyond it evicts the
+ * challenge closest to expiry rather than refusing, so a client flooding the
+ * endpoint with challenges it never uses cannot lock everyone else out of login;
+ * it only shortens the window of its own oldest challenges.
+ */
+@Component
+@Slf4j
+public class ChallengeStore {
+
+    private static final int CHALLENGE_BYTES = 32;
+
+    private final ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String>[] wheel;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Counter evicted;
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+    private final long ttlMs;
+    private final long tickMs;
+    private final int maxOutstanding;
+
+    // Last tick whose slot was drained; only advanced by the scheduled tick
+    private volatile long drainedTick;
+
+    @SuppressWarnings("unchecked")
+    public ChallengeStore(MeterRegistry meterRegistry,
+                          @Value("${app.webauthn.challenges.ttl-ms:60000}") long ttlMs,
+                          @Value("${app.webauthn.challenges.tick-ms:100}") long tickMs,
+                          @Value("${app.webauthn.challenges.max-outstanding:100000}") int maxOutstanding) {
+        this.ttlMs = ttlMs;
+        this.tickMs = tickMs;
+        this.maxOutstanding = maxOutstanding;
+        this.wheel = new ConcurrentLinkedQueue[(int) (ttlMs / tickMs) + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.drainedTick = System.currentTimeMillis() / tickMs;
+
+        Gauge.builder("smartpay.webauthn.challenges.outstanding", outstanding, AtomicInteger::get)
+                .description("Issued WebAuthn challenges not yet used or expired")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("smartpay.webauthn.challenges.evicted")
+                .description("Unused WebAuthn challenges evicted to make room for new ones")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Issue a new single-use challenge (base64url, no padding), evicting the oldest when full
+     */
+    public String issue() {
+        if (outstanding.incrementAndGet() > maxOutstanding) {
+            evictOldest();
+        }
+
+        byte[] bytes = new byte[CHALLENGE_BYTES];
+        random.get().nextBytes(bytes);
+        String challenge = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        expiries.put(challenge, expiresAt);
+        wheel[slot(expiresAt / tickMs + 1)].add(challenge);
+        return challenge;
+    }
+
+    /**
+     * Use up a challenge; true only for the first use of an issued, unexpired challenge
+     */
+    public boolean consume(String challenge) {
+        if (challenge == null) {
+            return false;
+        }
+        Long expiresAt = expiries.remove(challenge);
+        if (expiresAt == null) {
+            return false;
+        }
+        outstanding.decrementAndGet();
+        // The wheel expires challenges up to a tick late
+        return System.currentTimeMillis() <= expiresAt;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Drain the wheel slots that have come due
+     */
+    @Scheduled(fixedRateString = "${app.webauthn.challenges.tick-ms:100}")
+    public void tick() {
+        long nowMs = System.currentTimeMillis();
+        long now = nowMs / tickMs;
+        int expired = 0;
+        List<String> notDue = new ArrayList<>();
+
+        // After a long pause one full turn visits every slot
+        for (long tick = Math.max(drainedTick + 1, now - wheel.length + 1); tick <= now; tick++) {
+            ConcurrentLinkedQueue<String> slot = wheel[slot(tick)];
+            String challenge;
+            while ((challenge = slot.poll()) != null) {
+                Long expiresAt = expiries.get(challenge);
+                if (expiresAt == null) {
+                    continue;
+                }
+                if (expiresAt > nowMs) {
+                    // Issued while the tick was late and hashed to a slot a turn early
+                    notDue.add(challenge);
+                } else if (expiries.remove(challenge, expiresAt)) {
+                    outstanding.decrementAndGet();
+                    expired++;
+                }
+            }
+            if (!notDue.isEmpty()) {
+                slot.addAll(notDue);
+                notDue.clear();
+            }
+            drainedTick = tick;
+        }
+
+        if (expired > 0) {
+            log.debug("Expired {} unused challenges", expired);
+        }
+    }
+
+    /**
+     * Drop the outstanding challenge closest to expiry.
+     *
+     * Challenges share one TTL, so the slots right after the last drained tick hold
+     * the oldest ones. Entries already consumed are discarded on the way, as the
+     * tick would have done.
+     */
+    private void evictOldest() {
+        long from = drainedTick + 1;
+        for (long tick = from; tick < from + wheel.length; tick++) {
+            ConcurrentLinkedQueue<String> slot = wheel[slot(tick)];
+            String challenge;
+            while ((challenge = slot.poll()) != null) {
+                if (expiries.remove(challenge) != null) {
+                    outstanding.decrementAndGet();
+                    evicted.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.length);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Cache of active WebAuthn credentials by credential ID.
+ *
+ * Known credentials and unknown IDs are kept in separate bounded caches, so a
+ * flood of random credential IDs can only evict other negative entries and never
+ * pushes real credentials out. Enrollment and deactivation on this instance
+ * invalidate the entry immediately. Nothing tells this instance about changes made
+ * on another one, so both caches expire within seconds: a credential deactivated
+ * elsewhere is refused after at most the TTL, and one enrolled elsewhere becomes
+ * usable after at most the negative TTL (and the next filter refresh).
+ *
+ * Lookups that miss the positive cache go through the {@link CredentialFilter}
+ * first, so IDs that were never enrolled are rejected without a query. Public
+ * keys are decoded when a credential is cached, not on every assertion.
+ */
+@Component
+@Slf4j
+public class CredentialCache {
+
+    // Credential IDs are stored in a 512 character column; anything longer cannot exist
+    private static final int MAX_CREDENTIAL_ID_LENGTH = 512;
+
+    private final BiometricRepository biometricRepository;
+    private final CredentialFilter credentialFilter;
+    private final Cache<String, Credential> known;
+    private final Cache<String, Boolean> unknown;
+
+    public CredentialCache(BiometricRepository biometricRepository,
+                           CredentialFilter credentialFilter,
+                           @Value("${app.webauthn.credential-cache.max-size:100000}") long maxSize,
+                           @Value("${app.webauthn.credential-cache.ttl-seconds:30}") long ttlSeconds,
+                           @Value("${app.webauthn.credential-cache.negative-max-size:100000}") long negativeMaxSize,
+                           @Value("${app.webauthn.credential-cache.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+        this.biometricRepository = biometricRepository;
+        this.credentialFilter = credentialFilter;
+        this.known = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(negativeMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .build();
+    }
+
+    /**
+     * Active credential with the given ID, from the cache or the database
+     */
+    public Optional<Credential> find(String credentialId) {
+        if (credentialId == null || credentialId.isEmpty() || credentialId.length() > MAX_CREDENTIAL_ID_LENGTH) {
+            return Optional.empty();
+        }
+
+        Credential credential = known.getIfPresent(credentialId);
+        if (credential != null) {
+            return Optional.of(credential);
+        }
+        if (!credentialFilter.mightContain(credentialId) || unknown.getIfPresent(credentialId) != null) {
+            return Optional.empty();
+        }
+
+        Optional<BiometricRepository.CredentialRow> row = biometricRepository.findActiveCredential(credentialId);
+        if (row.isEmpty()) {
+            credentialFilter.recordFalsePositive();
+            unknown.put(credentialId, Boolean.TRUE);
+            return Optional.empty();
+        }
+
+        credential = Credential.of(row.get());
+        known.put(credentialId, credential);
+        return Optional.of(credential);
+    }
+
+    /**
+     * Make a newly enrolled credential visible to lookups
+     */
+    public void enrolled(String credentialId) {
+        if (credentialId == null) {
+            return;
+        }
+        credentialFilter.add(credentialId);
+        invalidate(credentialId);
+    }
+
+    /**
+     * Stop serving a deactivated credential
+     */
+    public void deactivated(String credentialId) {
+        if (credentialId == null) {
+            return;
+        }
+        // The ID stays in the filter until the next rebuild; the negative entry saves its lookups meanwhile
+        known.invalidate(credentialId);
+        unknown.put(credentialId, Boolean.TRUE);
+    }
+
+    private void invalidate(String credentialId) {
+        known.invalidate(credentialId);
+        unknown.invalidate(credentialId);
+    }
+
+    /**
+     * The fields of an active WebAuthn credential needed to authenticate with it
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Credential {
+        private final Long biometricId;
+        private final Long userId;
+        // Decoded once when the credential is cached; null when the stored key cannot be used
+        private final WebAuthnPublicKey publicKey;
+        // Signature counter when the credential was cached; the database holds the current one
+        private final long signCount;
+
+        static Credential of(BiometricRepository.CredentialRow row) {
+            WebAuthnPublicKey publicKey = null;
+            try {
+                publicKey = WebAuthnPublicKey.parse(row.getPublicKey());
+            } catch (GeneralSecurityException | RuntimeException e) {
+                log.warn("Unusable public key for biometric {}: {}", row.getBiometricId(), e.getMessage());
+            }
+            long signCount = row.getSignCount() != null ? row.getSignCount() : 0;
+            return new Credential(row.getBiometricId(), row.getUserId(), publicKey, signCount);
+        }
+    }
+}
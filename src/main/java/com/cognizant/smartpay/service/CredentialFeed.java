@@ -0,0 +1,231 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CredentialFeedResponse;
+import com.cognizant.smartpay.repository.BiometricRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versioned feed of active WebAuthn credential IDs for kiosks.
+ *
+ * Every enrollment and deactivation gets the next sequence number and is kept
+ * in a bounded in-memory change log. A kiosk polls with the cursor of its last
+ * response ("epoch.sequence") and receives only the credential IDs added or
+ * revoked since then. A cursor from before the oldest logged change, or from an
+ * earlier process (different epoch), gets the full list with reset set.
+ *
+ * The active set is loaded with an ID-only query at startup and reconciled with
+ * the database periodically, so changes made by other instances also show up in
+ * the log (with a delay of up to the reconcile interval).
+ *
+ * Sequences and the epoch belong to one process. Behind a load balancer a poll
+ * that lands on another instance than the previous one, or follows a restart,
+ * carries a foreign epoch and gets the full list again. That is always correct,
+ * only not a delta; kiosks polling often should be routed to one instance
+ * (session affinity) to keep getting deltas.
+ */
+@Component
+@Slf4j
+public class CredentialFeed {
+
+    private final BiometricRepository biometricRepository;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    @Value("${app.webauthn.credential-feed.max-log-size:10000}")
+    private int maxLogSize;
+
+    // Guarded by "this"
+    private final Set<String> active = new LinkedHashSet<>();
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private long sequence;
+    private List<String> activeList = Collections.emptyList();
+    private long activeListSequence = -1;
+
+    public CredentialFeed(BiometricRepository biometricRepository) {
+        this.biometricRepository = biometricRepository;
+    }
+
+    /**
+     * Load the active set; it is the state at sequence 0, so nothing is logged
+     */
+    @PostConstruct
+    public void init() {
+        List<String> stored = biometricRepository.findActiveCredentialIds();
+        synchronized (this) {
+            for (String credentialId : stored) {
+                if (credentialId != null && !credentialId.isEmpty()) {
+                    active.add(credentialId);
+                }
+            }
+            log.info("Credential feed loaded {} active credentials at {}", active.size(), cursor());
+        }
+    }
+
+    /**
+     * Cursor of the current state
+     */
+    public synchronized String cursor() {
+        return epoch + "." + sequence;
+    }
+
+    /**
+     * Changes since the given cursor, or the full list when the cursor is null or too old
+     */
+    public synchronized CredentialFeedResponse since(String cursor) {
+        long since = parse(cursor);
+        long oldest = changes.isEmpty() ? sequence : changes.peekFirst().sequence - 1;
+
+        if (since < oldest || since > sequence) {
+            return new CredentialFeedResponse(cursor(), true, activeCredentialIds(), Collections.emptyList());
+        }
+
+        // Only the last change per credential matters to the kiosk
+        Map<String, Boolean> latest = new LinkedHashMap<>();
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+            Change change = it.next();
+            if (change.sequence <= since) {
+                break;
+            }
+            latest.putIfAbsent(change.credentialId, change.added);
+        }
+
+        List<String> added = new ArrayList<>();
+        List<String> revoked = new ArrayList<>();
+        latest.forEach((credentialId, isAdded) -> (isAdded ? added : revoked).add(credentialId));
+        return new CredentialFeedResponse(cursor(), false, added, revoked);
+    }
+
+    /**
+     * All active credential IDs (shared immutable list, rebuilt only after a change)
+     */
+    public synchronized List<String> activeCredentialIds() {
+        if (activeListSequence != sequence) {
+            activeList = List.copyOf(active);
+            activeListSequence = sequence;
+        }
+        return activeList;
+    }
+
+    public synchronized void added(String credentialId) {
+        if (credentialId != null && !credentialId.isEmpty() && active.add(credentialId)) {
+            append(credentialId, true);
+        }
+    }
+
+    public synchronized void revoked(String credentialId) {
+        if (credentialId != null && active.remove(credentialId)) {
+            append(credentialId, false);
+        }
+    }
+
+    /**
+     * Bring the active set in line with the database (ID-only query)
+     */
+    @Scheduled(fixedDelayString = "${app.webauthn.credential-feed.reconcile-interval-ms:300000}",
+               initialDelayString = "${app.webauthn.credential-feed.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        long startedAt;
+        synchronized (this) {
+            startedAt = sequence;
+        }
+
+        List<String> stored;
+        try {
+            stored = biometricRepository.findActiveCredentialIds();
+        } catch (RuntimeException e) {
+            log.error("Credential feed reconcile failed", e);
+            return;
+        }
+
+        synchronized (this) {
+            // Credentials changed on this instance while the query ran are already up to date
+            Set<String> changedMeanwhile = new HashSet<>();
+            for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+                Change change = it.next();
+                if (change.sequence <= startedAt) {
+                    break;
+                }
+                changedMeanwhile.add(change.credentialId);
+            }
+
+            Set<String> storedSet = new HashSet<>(stored.size() * 2);
+            int added = 0;
+            int revoked = 0;
+            for (String credentialId : stored) {
+                if (credentialId == null || credentialId.isEmpty()) {
+                    continue;
+                }
+                storedSet.add(credentialId);
+                if (!changedMeanwhile.contains(credentialId) && active.add(credentialId)) {
+                    append(credentialId, true);
+                    added++;
+                }
+            }
+            for (Iterator<String> it = active.iterator(); it.hasNext(); ) {
+                String credentialId = it.next();
+                if (!storedSet.contains(credentialId) && !changedMeanwhile.contains(credentialId)) {
+                    it.remove();
+                    append(credentialId, false);
+                    revoked++;
+                }
+            }
+
+            if (added > 0 || revoked > 0) {
+                log.info("Credential feed reconciled: {} added, {} revoked, {} active at {}",
+                        added, revoked, active.size(), cursor());
+            }
+        }
+    }
+
+    private void append(String credentialId, boolean added) {
+        changes.addLast(new Change(++sequence, credentialId, added));
+        while (changes.size() > maxLogSize) {
+            changes.removeFirst();
+        }
+    }
+
+    /**
+     * Sequence of a cursor from this process, or -1 (forces a reset)
+     */
+    private long parse(String cursor) {
+        if (cursor == null) {
+            return -1;
+        }
+        int dot = cursor.indexOf('.');
+        if (dot < 0 || !epoch.equals(cursor.substring(0, dot))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(cursor.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Change {
+
+        private final long sequence;
+        private final String credentialId;
+        private final boolean added;
+
+        Change(long sequence, String credentialId, boolean added) {
+            this.sequence = sequence;
+            this.credentialId = credentialId;
+            this.added = added;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Front-door filter over the credential IDs of all active WebAuthn biometrics.
+ *
+ * Backed by a {@link CuckooFilter}, so a credential ID it rejects is definitely
+ * not enrolled and can be refused without a database round trip. The filter is
+ * built at startup, kept up to date by enrollment on this instance, and rebuilt
+ * periodically (to drop deactivated credentials) or when it fills up.
+ *
+ * Credentials enrolled on other instances are picked up by a refresh every
+ * refresh-interval-ms that adds the IDs enrolled since the previous one, an
+ * indexed query on enrolled_at. Each refresh looks back an extra refresh-overlap-ms
+ * so enrollments committed late or stamped by a clock running behind are not
+ * skipped. Such a credential is refused for at most about one refresh interval.
+ *
+ * Deactivated credentials are not deleted: a cuckoo filter deletion removes a
+ * fingerprint that a different, still active credential may share, which would
+ * then be rejected. A deactivated ID stays until the next rebuild, which only
+ * costs a lookup that the negative cache absorbs.
+ *
+ * Whenever there is no complete filter (disabled, not built yet, or full) every
+ * ID passes, so the filter can only ever save lookups, not reject valid users.
+ */
+@Component
+@Slf4j
+public class CredentialFilter {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final BiometricRepository biometricRepository;
+    private final SecureRandom seeds = new SecureRandom();
+
+    private final Counter rejected;
+    private final Counter passed;
+    private final Counter falsePositives;
+
+    @Value("${app.webauthn.credential-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.webauthn.credential-filter.headroom:2.0}")
+    private double headroom;
+
+    @Value("${app.webauthn.credential-filter.rebuild-interval-ms:900000}")
+    private long rebuildIntervalMs;
+
+    @Value("${app.webauthn.credential-filter.refresh-overlap-ms:60000}")
+    private long refreshOverlapMs;
+
+    private volatile CuckooFilter filter;
+    private volatile long lastRebuilt;
+    // Start of the last rebuild or refresh read; enrollments since then are not in the filter yet
+    private volatile LocalDateTime readUpTo;
+
+    // Guarded by "this": credentials enrolled while a rebuild is reading the table
+    private boolean rebuilding;
+    private boolean stale;
+    private final List<String> enrolledDuringRebuild = new ArrayList<>();
+
+    public CredentialFilter(BiometricRepository biometricRepository, MeterRegistry meterRegistry) {
+        this.biometricRepository = biometricRepository;
+        this.rejected = Counter.builder("smartpay.webauthn.credential.filter.checks")
+                .tag("result", "rejected")
+                .description("Credential IDs rejected by the filter without a database lookup")
+                .register(meterRegistry);
+        this.passed = Counter.builder("smartpay.webauthn.credential.filter.checks")
+                .tag("result", "passed")
+                .description("Credential IDs the filter let through to the cache and database")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("smartpay.webauthn.credential.filter.false.positives")
+                .description("Credential IDs that passed the filter but are not enrolled")
+                .register(meterRegistry);
+
+        Gauge.builder("smartpay.webauthn.credential.filter.size", this, f -> f.stat(CuckooFilter::size, 0))
+                .description("Credential IDs in the filter")
+                .register(meterRegistry);
+        Gauge.builder("smartpay.webauthn.credential.filter.load", this, f -> f.stat(CuckooFilter::loadFactor, 0))
+                .description("Share of filter slots in use")
+                .register(meterRegistry);
+        Gauge.builder("smartpay.webauthn.credential.filter.fpp.expected", this,
+                        f -> f.stat(CuckooFilter::expectedFalsePositiveRate, 1.0))
+                .description("Expected false positive rate at the current load")
+                .register(meterRegistry);
+        Gauge.builder("smartpay.webauthn.credential.filter.fpp.observed", this, CredentialFilter::observedFalsePositiveRate)
+                .description("Share of unknown credential IDs that passed the filter")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuild when the filter is full or older than the rebuild interval
+     */
+    @Scheduled(fixedDelayString = "${app.webauthn.credential-filter.check-interval-ms:60000}")
+    public void maintain() {
+        boolean due;
+        synchronized (this) {
+            due = stale || System.currentTimeMillis() - lastRebuilt >= rebuildIntervalMs;
+        }
+        if (enabled && due) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Add the credentials enrolled (on any instance) since the last rebuild or refresh
+     */
+    @Scheduled(fixedDelayString = "${app.webauthn.credential-filter.refresh-interval-ms:5000}")
+    public void refresh() {
+        CuckooFilter current = filter;
+        LocalDateTime since = readUpTo;
+        if (!enabled || current == null || since == null) {
+            return;
+        }
+        synchronized (this) {
+            if (rebuilding) {
+                return;
+            }
+        }
+
+        LocalDateTime started = LocalDateTime.now();
+        List<String> enrolled;
+        try {
+            enrolled = biometricRepository.findActiveCredentialIdsEnrolledSince(
+                    since.minus(refreshOverlapMs, ChronoUnit.MILLIS));
+        } catch (RuntimeException e) {
+            log.warn("Credential filter refresh failed: {}", e.getMessage());
+            return;
+        }
+
+        int added = 0;
+        for (String credentialId : enrolled) {
+            // The overlap re-reads IDs already in the filter; adding them again would use up slots
+            if (credentialId != null && !credentialId.isEmpty() && !current.mightContain(credentialId)) {
+                add(credentialId);
+                added++;
+            }
+        }
+        synchronized (this) {
+            if (filter == current) {
+                readUpTo = started;
+            }
+        }
+        if (added > 0) {
+            log.debug("Credential filter refreshed with {} credential IDs enrolled since {}", added, since);
+        }
+    }
+
+    /**
+     * False when the credential ID is definitely not enrolled
+     */
+    public boolean mightContain(String credentialId) {
+        CuckooFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        if (current.mightContain(credentialId)) {
+            passed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Record that an ID which passed the filter turned out not to be enrolled
+     */
+    public void recordFalsePositive() {
+        if (filter != null) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Add a newly enrolled credential
+     */
+    public synchronized void add(String credentialId) {
+        if (!enabled) {
+            return;
+        }
+        if (rebuilding) {
+            enrolledDuringRebuild.add(credentialId);
+        }
+        CuckooFilter current = filter;
+        if (current != null && !current.add(credentialId)) {
+            // Without this ID the filter would reject a valid credential; pass everything until rebuilt
+            filter = null;
+            stale = true;
+            log.warn("Credential filter is full, disabled until the next rebuild");
+        }
+    }
+
+    /**
+     * Build a new filter from the database and swap it in
+     */
+    public void rebuild() {
+        synchronized (this) {
+            if (rebuilding) {
+                return;
+            }
+            rebuilding = true;
+            enrolledDuringRebuild.clear();
+        }
+
+        try {
+            long started = System.currentTimeMillis();
+            LocalDateTime readStarted = LocalDateTime.now();
+            List<String> credentialIds = biometricRepository.findActiveCredentialIds();
+            CuckooFilter next = new CuckooFilter(
+                    (int) Math.min(Integer.MAX_VALUE / 8, Math.max(MIN_CAPACITY, credentialIds.size() * headroom)),
+                    seeds.nextLong());
+
+            boolean complete = addAll(next, credentialIds);
+            synchronized (this) {
+                complete = complete && addAll(next, enrolledDuringRebuild);
+                filter = complete ? next : null;
+                stale = !complete;
+                lastRebuilt = System.currentTimeMillis();
+                readUpTo = readStarted;
+            }
+
+            if (complete) {
+                log.info("Credential filter rebuilt with {} credential IDs in {} ms (expected false positive rate {})",
+                        next.size(), System.currentTimeMillis() - started,
+                        String.format("%.2e", next.expectedFalsePositiveRate()));
+            } else {
+                log.warn("Credential filter could not hold {} credential IDs, disabled until the next rebuild",
+                        credentialIds.size());
+            }
+        } catch (RuntimeException e) {
+            // Keep serving with the previous filter
+            log.error("Credential filter rebuild failed", e);
+        } finally {
+            synchronized (this) {
+                rebuilding = false;
+                enrolledDuringRebuild.clear();
+            }
+        }
+    }
+
+    private double stat(ToDoubleFunction<CuckooFilter> stat, double absent) {
+        CuckooFilter current = filter;
+        return current != null ? stat.applyAsDouble(current) : absent;
+    }
+
+    private double observedFalsePositiveRate() {
+        double unknown = falsePositives.count() + rejected.count();
+        return unknown == 0 ? 0.0 : falsePositives.count() / unknown;
+    }
+
+    private static boolean addAll(CuckooFilter target, List<String> credentialIds) {
+        for (String credentialId : credentialIds) {
+            if (credentialId != null && !credentialId.isEmpty() && !target.add(credentialId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
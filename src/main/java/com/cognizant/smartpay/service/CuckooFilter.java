@@ -0,0 +1,185 @@
+package com.cognizant.smartpay.service;
+
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cuckoo filter over strings: a set membership test with no false negatives
+ * and a small false positive rate. Items are never removed; the owner rebuilds
+ * the filter instead.
+ *
+ * Every item is reduced to a 16-bit fingerprint stored in one of two candidate
+ * buckets of four slots (the second bucket is derived from the first and the
+ * fingerprint, so entries can be moved without the original item). When both
+ * buckets are full an entry is kicked to its alternate bucket; an entry that
+ * still has no home after {@link #MAX_KICKS} moves is parked in a single victim
+ * slot so that nothing inserted is ever lost. Only once that slot is taken does
+ * {@link #add} report the filter as full.
+ *
+ * Writers are serialized; readers use optimistic reads and retry under the
+ * read lock if a write (which may move entries between buckets) overlapped.
+ */
+final class CuckooFilter {
+
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int FINGERPRINT_BITS = 16;
+    private static final int MAX_KICKS = 500;
+    private static final double MAX_LOAD = 0.95;
+
+    private final short[] table;
+    private final int bucketMask;
+    private final long seed;
+    private final Random random;
+    private final StampedLock lock = new StampedLock();
+
+    private int size;
+    private boolean hasVictim;
+    private int victimBucket;
+    private short victimFingerprint;
+
+    CuckooFilter(int expectedItems, long seed) {
+        long buckets = Math.max(2, (long) Math.ceil(expectedItems / (SLOTS_PER_BUCKET * MAX_LOAD)));
+        int bucketCount = (int) Math.min(1L << 30, Long.highestOneBit(buckets - 1) << 1);
+        this.table = new short[bucketCount * SLOTS_PER_BUCKET];
+        this.bucketMask = bucketCount - 1;
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Add an item; returns false when the filter is full (the item was not added)
+     */
+    boolean add(String item) {
+        long hash = hash(item);
+        short fingerprint = fingerprint(hash);
+        int bucket = (int) hash & bucketMask;
+
+        long stamp = lock.writeLock();
+        try {
+            if (hasVictim) {
+                return false;
+            }
+            if (insertIntoBucket(bucket, fingerprint) || insertIntoBucket(alternate(bucket, fingerprint), fingerprint)) {
+                size++;
+                return true;
+            }
+
+            // Both buckets are full: kick entries along their alternate buckets
+            int current = random.nextBoolean() ? bucket : alternate(bucket, fingerprint);
+            short carried = fingerprint;
+            for (int kick = 0; kick < MAX_KICKS; kick++) {
+                int slot = current * SLOTS_PER_BUCKET + random.nextInt(SLOTS_PER_BUCKET);
+                short evicted = table[slot];
+                table[slot] = carried;
+                carried = evicted;
+                current = alternate(current, carried);
+                if (insertIntoBucket(current, carried)) {
+                    size++;
+                    return true;
+                }
+            }
+
+            // The item itself is in the table now; park the last evicted entry
+            hasVictim = true;
+            victimBucket = current;
+            victimFingerprint = carried;
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * False means the item was definitely never added
+     */
+    boolean mightContain(String item) {
+        long hash = hash(item);
+        short fingerprint = fingerprint(hash);
+        int bucket = (int) hash & bucketMask;
+        int alternate = alternate(bucket, fingerprint);
+
+        long stamp = lock.tryOptimisticRead();
+        boolean found = contains(bucket, alternate, fingerprint);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = contains(bucket, alternate, fingerprint);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return table.length;
+    }
+
+    double loadFactor() {
+        return (double) size / table.length;
+    }
+
+    /**
+     * Expected false positive rate at the current load: an absent item is compared with
+     * the fingerprints of two buckets, each of which matches with probability 2^-16
+     */
+    double expectedFalsePositiveRate() {
+        double comparisons = 2.0 * SLOTS_PER_BUCKET * loadFactor();
+        return 1.0 - Math.pow(1.0 - 1.0 / (1 << FINGERPRINT_BITS), comparisons);
+    }
+
+    private boolean contains(int bucket, int alternate, short fingerprint) {
+        int first = bucket * SLOTS_PER_BUCKET;
+        int second = alternate * SLOTS_PER_BUCKET;
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            if (table[first + i] == fingerprint || table[second + i] == fingerprint) {
+                return true;
+            }
+        }
+        return hasVictim && victimFingerprint == fingerprint
+                && (victimBucket == bucket || victimBucket == alternate);
+    }
+
+    private boolean insertIntoBucket(int bucket, short fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            if (table[base + i] == 0) {
+                table[base + i] = fingerprint;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int alternate(int bucket, short fingerprint) {
+        return (bucket ^ (int) mix(fingerprint & 0xFFFF)) & bucketMask;
+    }
+
+    private long hash(String item) {
+        long h = seed;
+        for (int i = 0; i < item.length(); i++) {
+            h = (h ^ item.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h ^ item.length());
+    }
+
+    private static short fingerprint(long hash) {
+        // 0 marks an empty slot
+        short fingerprint = (short) (hash >>> (64 - FINGERPRINT_BITS));
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
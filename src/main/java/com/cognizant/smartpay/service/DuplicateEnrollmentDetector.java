@@ -0,0 +1,233 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.entity.DuplicateEnrollment;
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.cognizant.smartpay.repository.DuplicateEnrollmentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background check of new fingerprint enrollments against other users' templates.
+ *
+ * Enrollment only queues the new template (after commit) and returns; a single
+ * worker thread scans the gallery for the best template of a different user. A
+ * match at or above the dedupe threshold is recorded in duplicate_enrollments and,
+ * when app.biometric.dedupe.action is deactivate, the new enrollment is deactivated.
+ *
+ * The scan runs on the worker thread rather than the match engine's pool so it
+ * never competes with identification at the gates. The queue is bounded; when it
+ * is full the check is skipped and counted rather than slowing enrollment down.
+ */
+@Component
+@Slf4j
+public class DuplicateEnrollmentDetector {
+
+    private final BiometricGallery biometricGallery;
+    private final ShardedIdentifier shardedIdentifier;
+    private final TemplateMatcher matcher;
+    private final BiometricRepository biometricRepository;
+    private final DuplicateEnrollmentRepository duplicateEnrollmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final LinkedBlockingQueue<Job> queue;
+
+    private final Counter checked;
+    private final Counter flagged;
+    private final Counter deactivated;
+    private final Counter dropped;
+    private final Timer lag;
+
+    @Value("${app.biometric.dedupe.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.biometric.dedupe.threshold:${app.biometric.match-threshold:85}}")
+    private int threshold;
+
+    @Value("${app.biometric.dedupe.action:flag}")
+    private String action;
+
+    private volatile Thread worker;
+
+    public DuplicateEnrollmentDetector(BiometricGallery biometricGallery,
+                                       ShardedIdentifier shardedIdentifier,
+                                       TemplateMatcher matcher,
+                                       BiometricRepository biometricRepository,
+                                       DuplicateEnrollmentRepository duplicateEnrollmentRepository,
+                                       TransactionTemplate transactionTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.biometric.dedupe.queue-capacity:10000}") int queueCapacity) {
+        this.biometricGallery = biometricGallery;
+        this.shardedIdentifier = shardedIdentifier;
+        this.matcher = matcher;
+        this.biometricRepository = biometricRepository;
+        this.duplicateEnrollmentRepository = duplicateEnrollmentRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        this.checked = Counter.builder("smartpay.biometric.dedupe.checked")
+                .description("New enrollments checked for duplicates")
+                .register(meterRegistry);
+        this.flagged = Counter.builder("smartpay.biometric.dedupe.duplicates")
+                .tag("action", "flagged")
+                .description("Enrollments that matched another user's template")
+                .register(meterRegistry);
+        this.deactivated = Counter.builder("smartpay.biometric.dedupe.duplicates")
+                .tag("action", "deactivated")
+                .description("Enrollments that matched another user's template")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("smartpay.biometric.dedupe.dropped")
+                .description("Enrollments not checked because the queue was full")
+                .register(meterRegistry);
+        this.lag = Timer.builder("smartpay.biometric.dedupe.lag")
+                .description("Time from enrollment commit to the start of its duplicate check")
+                .register(meterRegistry);
+        Gauge.builder("smartpay.biometric.dedupe.queue.depth", queue, LinkedBlockingQueue::size)
+                .description("Enrollments waiting for a duplicate check")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Duplicate enrollment detection is disabled");
+            return;
+        }
+        if (!"flag".equalsIgnoreCase(action) && !"deactivate".equalsIgnoreCase(action)) {
+            throw new IllegalArgumentException("Unsupported dedupe action: " + action);
+        }
+        Thread thread = new Thread(this::run, "duplicate-enrollment-detector");
+        thread.setDaemon(true);
+        thread.start();
+        worker = thread;
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Queue a committed enrollment for a duplicate check; never blocks
+     */
+    public void submit(Long biometricId, Long userId, byte[] template) {
+        if (!enabled || biometricId == null || userId == null || template == null || template.length == 0) {
+            return;
+        }
+        if (!queue.offer(new Job(biometricId, userId, template, System.nanoTime()))) {
+            dropped.increment();
+            log.warn("Duplicate check queue is full, enrollment {} of user {} not checked", biometricId, userId);
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            lag.record(System.nanoTime() - job.enqueuedAt, TimeUnit.NANOSECONDS);
+
+            try {
+                check(job);
+            } catch (RuntimeException e) {
+                log.error("Duplicate check of enrollment {} failed", job.biometricId, e);
+            }
+        }
+    }
+
+    private void check(Job job) {
+        // Templates of every device type with the same length are comparable;
+        // when the gallery is sharded only this node's shard is checked
+        List<BiometricGallery.Snapshot> candidates = biometricGallery.candidates(job.template.length, null);
+
+        long bestBiometricId = 0;
+        long bestUserId = 0;
+        int bestScore = -1;
+        for (BiometricGallery.Snapshot bucket : candidates) {
+            for (int slot = 0; slot < bucket.count(); slot++) {
+                if (!bucket.isActive(slot) || bucket.userId(slot) == job.userId) {
+                    continue;
+                }
+                int score = bucket.score(matcher, job.template, slot);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestBiometricId = bucket.biometricId(slot);
+                    bestUserId = bucket.userId(slot);
+                }
+            }
+        }
+        checked.increment();
+
+        if (bestScore < threshold) {
+            return;
+        }
+        record(job, bestBiometricId, bestUserId, bestScore);
+    }
+
+    private void record(Job job, long matchedBiometricId, long matchedUserId, int score) {
+        boolean deactivate = "deactivate".equalsIgnoreCase(action);
+
+        DuplicateEnrollment.Action outcome = transactionTemplate.execute(status -> {
+            DuplicateEnrollment.Action taken = deactivate && biometricRepository.deactivate(job.biometricId) > 0
+                    ? DuplicateEnrollment.Action.DEACTIVATED
+                    : DuplicateEnrollment.Action.FLAGGED;
+
+            DuplicateEnrollment duplicate = new DuplicateEnrollment();
+            duplicate.setBiometricId(job.biometricId);
+            duplicate.setUserId(job.userId);
+            duplicate.setMatchedBiometricId(matchedBiometricId);
+            duplicate.setMatchedUserId(matchedUserId);
+            duplicate.setScore(score);
+            duplicate.setAction(taken);
+            duplicateEnrollmentRepository.save(duplicate);
+            return taken;
+        });
+
+        if (outcome == DuplicateEnrollment.Action.DEACTIVATED) {
+            if (shardedIdentifier.isEnabled()) {
+                shardedIdentifier.removed(job.biometricId);
+            } else {
+                biometricGallery.remove(job.biometricId);
+            }
+            deactivated.increment();
+        } else {
+            flagged.increment();
+        }
+        log.warn("Enrollment {} of user {} matches biometric {} of user {} (score {}): {}",
+                job.biometricId, job.userId, matchedBiometricId, matchedUserId, score, outcome);
+    }
+
+    /**
+     * A committed enrollment waiting for its duplicate check
+     */
+    private static final class Job {
+
+        private final long biometricId;
+        private final long userId;
+        private final byte[] template;
+        private final long enqueuedAt;
+
+        Job(long biometricId, long userId, byte[] template, long enqueuedAt) {
+            this.biometricId = biometricId;
+            this.userId = userId;
+            this.template = template;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
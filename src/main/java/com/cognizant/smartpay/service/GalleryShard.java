@@ -0,0 +1,32 @@
+package com.cognizant.smartpay.service;
+
+/**
+ * A gallery partition searchable on this JVM: the application's own gallery, or
+ * an in-process shard of the local transport. All shards share the match engine.
+ */
+final class GalleryShard {
+
+    private final BiometricGallery gallery;
+    private final TemplateMatchEngine engine;
+
+    GalleryShard(BiometricGallery gallery, TemplateMatchEngine engine) {
+        this.gallery = gallery;
+        this.engine = engine;
+    }
+
+    IdentificationResult identify(byte[] probe, String deviceType, int threshold) {
+        return engine.identify(gallery.candidates(probe.length, deviceType), probe, threshold);
+    }
+
+    boolean add(long biometricId, long userId, String deviceType, byte[] template) {
+        return gallery.add(biometricId, userId, deviceType, template);
+    }
+
+    void remove(long biometricId) {
+        gallery.remove(biometricId);
+    }
+
+    int size() {
+        return gallery.size();
+    }
+}
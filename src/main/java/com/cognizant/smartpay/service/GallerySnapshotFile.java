@@ -0,0 +1,372 @@
+package com.cognizant.smartpay.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary snapshot of the template gallery, read back with {@link FileChannel#map}.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header     magic "SPGS", version, created-at millis, high-water biometric_id,
+ *              bucket count, CRC32C of everything after the header, template count,
+ *              directory size (64 bytes, zero padded)
+ *   directory  per bucket: template length, count, ids offset, data offset,
+ *              device type (length-prefixed UTF-8)
+ *   sections   per bucket: biometric ids, user ids, then the templates back to back
+ *              with a stride of one template length (each section 8-byte aligned)
+ * </pre>
+ * Only live templates are written. The id arrays are copied to the heap on load
+ * because removals flag them in place; the template bytes stay in the mapping.
+ */
+final class GallerySnapshotFile {
+
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x53475053; // "SPGS" read little-endian
+    private static final int HEADER_SIZE = 64;
+    private static final int DIRECTORY_ENTRY_SIZE = 4 + 4 + 8 + 8 + 2;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long CHECKSUM_WINDOW = 1L << 28;
+
+    private GallerySnapshotFile() {
+    }
+
+    /**
+     * Write the live templates of the given bucket snapshots. The file is written next to
+     * the target and moved into place, so readers never see a partial snapshot.
+     */
+    static void write(Path path, long highWaterId, List<BiometricGallery.Snapshot> snapshots) throws IOException {
+        List<Section> sections = new ArrayList<>(snapshots.size());
+        long directorySize = 0;
+        long templateCount = 0;
+
+        for (BiometricGallery.Snapshot snapshot : snapshots) {
+            Section section = Section.capture(snapshot);
+            if (section.count == 0) {
+                continue;
+            }
+            sections.add(section);
+            directorySize += DIRECTORY_ENTRY_SIZE + section.deviceTypeBytes().length;
+            templateCount += section.count;
+        }
+
+        long position = align(HEADER_SIZE + directorySize);
+        long[] idsOffsets = new long[sections.size()];
+        long[] dataOffsets = new long[sections.size()];
+        for (int b = 0; b < sections.size(); b++) {
+            Section section = sections.get(b);
+            idsOffsets[b] = position;
+            dataOffsets[b] = align(position + 16L * section.count);
+            position = align(dataOffsets[b] + (long) section.count * section.templateLength);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Output out = new Output(channel, HEADER_SIZE);
+
+                for (int b = 0; b < sections.size(); b++) {
+                    Section section = sections.get(b);
+                    byte[] deviceType = section.deviceTypeBytes();
+                    out.putInt(section.templateLength);
+                    out.putInt(section.count);
+                    out.putLong(idsOffsets[b]);
+                    out.putLong(dataOffsets[b]);
+                    out.putShort((short) deviceType.length);
+                    out.put(deviceType, 0, deviceType.length);
+                }
+
+                byte[] template = new byte[0];
+                for (int b = 0; b < sections.size(); b++) {
+                    Section section = sections.get(b);
+                    out.padTo(idsOffsets[b]);
+                    for (int i = 0; i < section.count; i++) {
+                        out.putLong(section.biometricIds[i]);
+                    }
+                    for (int i = 0; i < section.count; i++) {
+                        out.putLong(section.userIds[i]);
+                    }
+
+                    out.padTo(dataOffsets[b]);
+                    if (template.length != section.templateLength) {
+                        template = new byte[section.templateLength];
+                    }
+                    for (int i = 0; i < section.count; i++) {
+                        section.snapshot.copyTemplate(section.slots[i], template, 0);
+                        out.put(template, 0, template.length);
+                    }
+                }
+                out.padTo(position);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putLong(System.currentTimeMillis())
+                        .putLong(highWaterId)
+                        .putInt(sections.size())
+                        .putInt((int) out.checksum.getValue())
+                        .putLong(templateCount)
+                        .putLong(directorySize);
+                header.clear();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Map a snapshot file. Throws an IOException if the file is not a snapshot of this
+     * version, is truncated, or (when verifying) does not match its checksum.
+     */
+    static Contents read(Path path, boolean verifyChecksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Gallery snapshot is truncated");
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a gallery snapshot");
+            }
+            int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported gallery snapshot version " + version);
+            }
+            long createdAt = header.getLong(8);
+            long highWaterId = header.getLong(16);
+            int bucketCount = header.getInt(24);
+            int checksum = header.getInt(28);
+            long directorySize = header.getLong(40);
+
+            if (directorySize < 0 || HEADER_SIZE + directorySize > size) {
+                throw new IOException("Gallery snapshot directory is truncated");
+            }
+            if (verifyChecksum && checksum(channel, size) != checksum) {
+                throw new IOException("Gallery snapshot checksum mismatch");
+            }
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, directorySize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            List<Bucket> buckets = new ArrayList<>(bucketCount);
+
+            for (int b = 0; b < bucketCount; b++) {
+                int templateLength = directory.getInt();
+                int count = directory.getInt();
+                long idsOffset = directory.getLong();
+                long dataOffset = directory.getLong();
+                byte[] deviceType = new byte[directory.getShort() & 0xFFFF];
+                directory.get(deviceType);
+
+                long dataSize = (long) count * templateLength;
+                if (templateLength <= 0 || count < 0 || dataSize > Integer.MAX_VALUE
+                        || idsOffset + 16L * count > size || dataOffset + dataSize > size) {
+                    throw new IOException("Gallery snapshot bucket " + b + " is out of bounds");
+                }
+
+                long[] biometricIds = new long[count];
+                long[] userIds = new long[count];
+                LongBuffer ids = channel.map(FileChannel.MapMode.READ_ONLY, idsOffset, 16L * count)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asLongBuffer();
+                ids.get(biometricIds);
+                ids.get(userIds);
+
+                // The mapping stays valid after the channel is closed
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataSize);
+
+                buckets.add(new Bucket(templateLength, new String(deviceType, StandardCharsets.UTF_8),
+                        count, biometricIds, userIds, data));
+            }
+
+            return new Contents(createdAt, highWaterId, buckets);
+        }
+    }
+
+    private static int checksum(FileChannel channel, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = HEADER_SIZE; position < size; position += CHECKSUM_WINDOW) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_WINDOW, size - position)));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Header fields and mapped buckets of a snapshot file
+     */
+    static final class Contents {
+
+        final long createdAt;
+        final long highWaterId;
+        final List<Bucket> buckets;
+
+        private Contents(long createdAt, long highWaterId, List<Bucket> buckets) {
+            this.createdAt = createdAt;
+            this.highWaterId = highWaterId;
+            this.buckets = buckets;
+        }
+    }
+
+    /**
+     * One bucket read from a snapshot file; {@code data} is a read-only mapping
+     */
+    static final class Bucket {
+
+        final int templateLength;
+        final String deviceType;
+        final int count;
+        final long[] biometricIds;
+        final long[] userIds;
+        final ByteBuffer data;
+
+        private Bucket(int templateLength, String deviceType, int count,
+                       long[] biometricIds, long[] userIds, ByteBuffer data) {
+            this.templateLength = templateLength;
+            this.deviceType = deviceType;
+            this.count = count;
+            this.biometricIds = biometricIds;
+            this.userIds = userIds;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Live slots of a bucket snapshot with their ids captured up front, so a concurrent
+     * removal cannot change what is written
+     */
+    private static final class Section {
+
+        private final BiometricGallery.Snapshot snapshot;
+        private final int templateLength;
+        private final int count;
+        private final int[] slots;
+        private final long[] biometricIds;
+        private final long[] userIds;
+
+        private Section(BiometricGallery.Snapshot snapshot, int count, int[] slots,
+                        long[] biometricIds, long[] userIds) {
+            this.snapshot = snapshot;
+            this.templateLength = snapshot.templateLength();
+            this.count = count;
+            this.slots = slots;
+            this.biometricIds = biometricIds;
+            this.userIds = userIds;
+        }
+
+        static Section capture(BiometricGallery.Snapshot snapshot) {
+            int total = snapshot.count();
+            int[] slots = new int[total];
+            long[] biometricIds = new long[total];
+            long[] userIds = new long[total];
+            int count = 0;
+
+            for (int slot = 0; slot < total; slot++) {
+                long biometricId = snapshot.biometricId(slot);
+                if (biometricId == BiometricGallery.REMOVED) {
+                    continue;
+                }
+                slots[count] = slot;
+                biometricIds[count] = biometricId;
+                userIds[count] = snapshot.userId(slot);
+                count++;
+            }
+            return new Section(snapshot, count, slots, biometricIds, userIds);
+        }
+
+        byte[] deviceTypeBytes() {
+            return snapshot.deviceType().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Buffered sequential writer that keeps a running checksum of everything it writes
+     */
+    private static final class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C checksum = new CRC32C();
+        private long position;
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void put(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(1);
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        void padTo(long target) throws IOException {
+            while (position + buffer.position() < target) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
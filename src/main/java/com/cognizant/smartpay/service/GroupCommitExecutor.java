@@ -0,0 +1,278 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group commit for independent units of work, e.g. checkouts at store opening.
+ *
+ * Units arriving within window-micros of each other are run one after another in a
+ * single database transaction, so a burst pays for one commit (and one log
+ * flush) per batch instead of one per unit. Each unit runs behind its own
+ * savepoint: a unit that throws is rolled back to it and only that caller sees
+ * the exception, while the others commit.
+ *
+ * If the shared transaction itself fails (a deadlock rolls back the whole
+ * transaction, or the commit fails) nothing was committed, and every unit of
+ * the batch is run again in its own transaction so each caller gets its own
+ * outcome.
+ *
+ * Batches run on their own DataSourceTransactionManager over the application's
+ * DataSource: the JPA transaction manager cannot create savepoints. Units must
+ * therefore work through JdbcTemplate only; JPA repositories would run in a
+ * separate transaction.
+ *
+ * A caller that times out before its unit started abandons it; once a unit has
+ * started, the caller waits for its outcome so a committed payment is never
+ * reported as failed.
+ */
+@Component
+@Slf4j
+public class GroupCommitExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long windowMicros;
+    private final int maxBatchSize;
+    private final int workers;
+    private final long timeoutMs;
+    private final LinkedBlockingQueue<Unit<?>> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> dispatchers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    @Autowired
+    public GroupCommitExecutor(DataSource dataSource,
+                               @Value("${app.payment.group-commit.enabled:false}") boolean enabled,
+                               @Value("${app.payment.group-commit.window-micros:3000}") long windowMicros,
+                               @Value("${app.payment.group-commit.max-batch-size:64}") int maxBatchSize,
+                               @Value("${app.payment.group-commit.workers:2}") int workers,
+                               @Value("${app.payment.group-commit.timeout-ms:10000}") long timeoutMs) {
+        this(new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                enabled, windowMicros, maxBatchSize, workers, timeoutMs);
+    }
+
+    GroupCommitExecutor(TransactionTemplate transactionTemplate, boolean enabled, long windowMicros,
+                        int maxBatchSize, int workers, long timeoutMs) {
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+        this.workers = workers;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            Thread dispatcher = new Thread(this::dispatchLoop, "group-commit-" + i);
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            dispatchers.add(dispatcher);
+        }
+        log.info("Group commit enabled with a {} us window, up to {} units per transaction and {} workers",
+                windowMicros, maxBatchSize, workers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+        Unit<?> unit;
+        while ((unit = queue.poll()) != null) {
+            if (unit.start()) {
+                unit.future.completeExceptionally(new IllegalStateException("Payment service is shutting down"));
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the work in the next group transaction and return its result
+     */
+    public <T> T execute(TransactionCallback<T> work) {
+        Unit<T> unit = new Unit<>(work);
+        queue.add(unit);
+
+        try {
+            try {
+                return unit.future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (unit.abandon()) {
+                    throw new IllegalStateException("Timed out waiting for a group commit slot");
+                }
+                // Already running: its outcome is about to be decided, do not report it as failed
+                return unit.future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Group commit failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for group commit", e);
+        }
+    }
+
+    private void dispatchLoop() {
+        List<Unit<?>> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(windowMicros);
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Unit<?> next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // Units whose caller gave up are dropped; the rest can no longer be abandoned
+                batch.removeIf(unit -> !unit.start());
+                if (!batch.isEmpty()) {
+                    process(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Group commit batch failed", e);
+                for (Unit<?> unit : batch) {
+                    unit.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Unit<?>> batch) {
+        if (batch.size() == 1) {
+            runAlone(batch.get(0));
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Unit<?> unit : batch) {
+                    unit.runBehindSavepoint(status);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Nothing of the batch was committed; give every unit its own transaction
+            log.warn("Group transaction of {} units failed, running them one by one: {}", batch.size(), e.getMessage());
+            for (Unit<?> unit : batch) {
+                unit.reset();
+                runAlone(unit);
+            }
+            return;
+        }
+
+        for (Unit<?> unit : batch) {
+            unit.publish();
+        }
+        log.debug("Committed {} units in one transaction", batch.size());
+    }
+
+    private <T> void runAlone(Unit<T> unit) {
+        try {
+            unit.future.complete(transactionTemplate.execute(unit.work));
+        } catch (RuntimeException e) {
+            unit.future.completeExceptionally(e);
+        }
+    }
+
+    private static final class Unit<T> {
+
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int ABANDONED = 2;
+
+        private final TransactionCallback<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        // Outcome inside the group transaction, published once it commits
+        private T result;
+        private RuntimeException failure;
+
+        Unit(TransactionCallback<T> work) {
+            this.work = work;
+        }
+
+        /**
+         * Taken from the queue to run; false when the caller already gave up
+         */
+        boolean start() {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        /**
+         * Given up by the caller; false when the unit already started
+         */
+        boolean abandon() {
+            return state.compareAndSet(QUEUED, ABANDONED);
+        }
+
+        void runBehindSavepoint(TransactionStatus status) {
+            Object savepoint = status.createSavepoint();
+            try {
+                result = work.doInTransaction(status);
+                status.releaseSavepoint(savepoint);
+            } catch (ConcurrencyFailureException e) {
+                // The database rolled back the whole transaction; the batch has to be redone
+                throw e;
+            } catch (RuntimeException e) {
+                status.rollbackToSavepoint(savepoint);
+                failure = e;
+            }
+        }
+
+        void reset() {
+            result = null;
+            failure = null;
+        }
+
+        void publish() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.ShardIdentifyRequest;
+import com.cognizant.smartpay.dto.ShardIdentifyResponse;
+import com.cognizant.smartpay.dto.ShardTemplateRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Transport to shards hosted by peer nodes.
+ *
+ * Peer i serves shard i at {base}/internal/shards; this node's own entry is
+ * ignored and its shard is searched in-process. Requests carry the shared
+ * X-Shard-Token. Identification is fully asynchronous, so a slow peer holds
+ * no thread while the scatter waits on it.
+ */
+@Slf4j
+class HttpShardTransport implements ShardTransport {
+
+    static final String TOKEN_HEADER = "X-Shard-Token";
+
+    private final List<String> peers;
+    private final int localIndex;
+    private final GalleryShard localShard;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper;
+    private final String token;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    HttpShardTransport(List<String> peers, int localIndex, GalleryShard localShard, ExecutorService executor,
+                       ObjectMapper objectMapper, String token, Duration timeout) {
+        this.peers = peers.stream().map(peer -> peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer).toList();
+        this.localIndex = localIndex;
+        this.localShard = localShard;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.token = token;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<IdentificationResult> identify(int shard, byte[] probe, String deviceType, int threshold) {
+        if (shard == localIndex) {
+            return CompletableFuture.supplyAsync(() -> localShard.identify(probe, deviceType, threshold), executor);
+        }
+
+        ShardIdentifyRequest body = new ShardIdentifyRequest(
+                Base64.getEncoder().encodeToString(probe), deviceType, threshold);
+        return client.sendAsync(post(shard, "/identify", body), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Shard " + shard + " answered " + response.statusCode());
+                    }
+                    try {
+                        return ShardedIdentifier.fromResponse(
+                                objectMapper.readValue(response.body(), ShardIdentifyResponse.class));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void add(int shard, long biometricId, long userId, String deviceType, byte[] template) {
+        if (shard == localIndex) {
+            localShard.add(biometricId, userId, deviceType, template);
+            return;
+        }
+
+        ShardTemplateRequest body = new ShardTemplateRequest(
+                biometricId, userId, deviceType, Base64.getEncoder().encodeToString(template));
+        send(post(shard, "/templates", body), "add biometric " + biometricId + " to shard " + shard);
+    }
+
+    @Override
+    public void remove(int shard, long biometricId) {
+        if (shard == localIndex) {
+            localShard.remove(biometricId);
+            return;
+        }
+
+        HttpRequest request = request(shard, "/templates/" + biometricId).DELETE().build();
+        send(request, "remove biometric " + biometricId + " from shard " + shard);
+    }
+
+    /**
+     * Fire-and-forget write; the peer picks up anything lost here on its next load
+     */
+    private void send(HttpRequest request, String what) {
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    if (failure != null) {
+                        log.warn("Could not {}: {}", what, failure.getMessage());
+                    } else if (response.statusCode() / 100 != 2) {
+                        log.warn("Could not {}: status {}", what, response.statusCode());
+                    }
+                });
+    }
+
+    private HttpRequest post(int shard, String path, Object body) {
+        try {
+            return request(shard, path)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize shard request", e);
+        }
+    }
+
+    private HttpRequest.Builder request(int shard, String path) {
+        return HttpRequest.newBuilder(URI.create(peers.get(shard) + "/internal/shards" + path))
+                .timeout(timeout)
+                .header(TOKEN_HEADER, token);
+    }
+}
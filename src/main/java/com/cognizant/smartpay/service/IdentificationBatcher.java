@@ -0,0 +1,197 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Micro-batches concurrent fingerprint identifications.
+ *
+ * Probes arriving within a short window are collected and identified together
+ * with {@link TemplateMatchEngine#identifyBatch}, so under load the gallery is
+ * streamed through the cache once per batch instead of once per request. Each
+ * caller still gets its own result.
+ *
+ * The window opens when the first probe of a batch arrives, so an idle gate pays
+ * at most one window of extra latency. Probes are grouped by template length and
+ * device type because those select the gallery buckets they are compared with.
+ */
+@Component
+@Slf4j
+public class IdentificationBatcher {
+
+    private final BiometricGallery biometricGallery;
+    private final TemplateMatchEngine templateMatchEngine;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    @Value("${app.biometric.batching.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.biometric.batching.window-micros:2000}")
+    private long windowMicros;
+
+    @Value("${app.biometric.batching.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${app.biometric.batching.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Value("${app.biometric.match-threshold:85}")
+    private int matchThreshold;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public IdentificationBatcher(BiometricGallery biometricGallery, TemplateMatchEngine templateMatchEngine) {
+        this.biometricGallery = biometricGallery;
+        this.templateMatchEngine = templateMatchEngine;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "biometric-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Identification batching enabled with a {} us window and up to {} probes per batch",
+                windowMicros, maxBatchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("Identification service is shutting down"));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a probe for the next batch and wait for its result
+     */
+    public IdentificationResult identify(byte[] probe, String deviceType) throws InterruptedException {
+        Request request = new Request(probe, deviceType);
+        queue.add(request);
+
+        try {
+            return request.future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Identification failed", cause);
+        } catch (TimeoutException e) {
+            request.future.cancel(false);
+            throw new IllegalStateException("Identification timed out");
+        }
+    }
+
+    private void dispatchLoop() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(windowMicros);
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Identification batch failed", e);
+                for (Request request : batch) {
+                    request.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Request> batch) {
+        Map<GroupKey, List<Request>> groups = new LinkedHashMap<>();
+        for (Request request : batch) {
+            if (request.future.isDone()) {
+                continue;
+            }
+            groups.computeIfAbsent(new GroupKey(request.probe.length, request.deviceType), k -> new ArrayList<>())
+                    .add(request);
+        }
+
+        for (Map.Entry<GroupKey, List<Request>> group : groups.entrySet()) {
+            List<Request> requests = group.getValue();
+            List<byte[]> probes = new ArrayList<>(requests.size());
+            for (Request request : requests) {
+                probes.add(request.probe);
+            }
+
+            List<BiometricGallery.Snapshot> candidates =
+                    biometricGallery.candidates(group.getKey().getTemplateLength(), group.getKey().getDeviceType());
+            List<IdentificationResult> results = templateMatchEngine.identifyBatch(candidates, probes, matchThreshold);
+
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).future.complete(results.get(i));
+            }
+        }
+
+        if (batch.size() > 1) {
+            log.debug("Identified {} probes in {} batched gallery passes", batch.size(), groups.size());
+        }
+    }
+
+    private static final class Request {
+
+        private final byte[] probe;
+        private final String deviceType;
+        private final CompletableFuture<IdentificationResult> future = new CompletableFuture<>();
+
+        Request(byte[] probe, String deviceType) {
+            this.probe = probe;
+            this.deviceType = deviceType;
+        }
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class GroupKey {
+        private final int templateLength;
+        private final String deviceType;
+    }
+}
@@ -0,0 +1,39 @@
+package com.cognizant.smartpay.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a 1:N fingerprint identification
+ */
+@Getter
+@AllArgsConstructor
+public class IdentificationResult {
+
+    public enum Status {
+        /** Best candidate cleared the threshold */
+        MATCH,
+        /** Another user's best candidate scored within the ambiguity margin of the best one */
+        AMBIGUOUS,
+        /** No candidate cleared the threshold */
+        NO_MATCH,
+        /** Best mode over shards: a candidate cleared the threshold, but a shard that did not answer may hold a closer one */
+        INCOMPLETE
+    }
+
+    private final Status status;
+
+    /** Best scoring candidate, null when nothing cleared the threshold */
+    private final TemplateMatchEngine.Match best;
+
+    /** Best scoring candidate of a different user, if any */
+    private final TemplateMatchEngine.Match runnerUp;
+
+    /** Number of templates scored */
+    private final long comparisons;
+
+    /** Whether the time budget ran out before every candidate was scored */
+    private final boolean timedOut;
+
+    private final long elapsedMicros;
+}
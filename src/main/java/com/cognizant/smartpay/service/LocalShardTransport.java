@@ -0,0 +1,37 @@
+package com.cognizant.smartpay.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Transport to shards that all live in this JVM.
+ *
+ * Runs the whole scatter-gather path (fan-out, per-shard timeouts, merging)
+ * without a cluster, e.g. several shards on one development machine.
+ */
+class LocalShardTransport implements ShardTransport {
+
+    private final List<GalleryShard> shards;
+    private final Executor executor;
+
+    LocalShardTransport(List<GalleryShard> shards, Executor executor) {
+        this.shards = List.copyOf(shards);
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<IdentificationResult> identify(int shard, byte[] probe, String deviceType, int threshold) {
+        return CompletableFuture.supplyAsync(() -> shards.get(shard).identify(probe, deviceType, threshold), executor);
+    }
+
+    @Override
+    public void add(int shard, long biometricId, long userId, String deviceType, byte[] template) {
+        shards.get(shard).add(biometricId, userId, deviceType, template);
+    }
+
+    @Override
+    public void remove(int shard, long biometricId) {
+        shards.get(shard).remove(biometricId);
+    }
+}
@@ -0,0 +1,193 @@
+package com.cognizant.smartpay.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Locality-sensitive hashing pre-filter for one gallery bucket.
+ *
+ * Each of the L tables samples a fixed band of k byte positions; a template's
+ * signature in that table is the hash of its bytes at those positions. Two
+ * templates that agree on a fraction p of their bytes collide in one table with
+ * probability p^k, so across L tables a genuine match (high p) is found with
+ * probability 1 - (1 - p^k)^L while unrelated templates almost never collide.
+ * More tables raise recall, a wider band lowers the number of false candidates.
+ *
+ * Every table is an open-addressing hash map from signature to the head of a
+ * chain of slots threaded through a per-table "next" array (slot + 1, 0 ends the
+ * chain), so the index costs a few primitive array entries per template.
+ *
+ * The bucket writer is the only thread mutating the index. Readers use the
+ * {@link View} published with the bucket snapshot; entries appended afterwards
+ * may be seen only partially, which can hide candidates but never produces
+ * wrong ones (slots past the snapshot's count are ignored).
+ */
+final class LshIndex {
+
+    private static final int INITIAL_TABLE_CAPACITY = 1024;
+
+    private final int[][] positions;
+    private final long[][] keys;
+    private final int[][] heads;
+    private final int[] entries;
+    private int[][] next;
+
+    LshIndex(int templateLength, int tables, int bandSize) {
+        int band = Math.min(bandSize, templateLength);
+        this.positions = new int[tables][];
+        this.keys = new long[tables][];
+        this.heads = new int[tables][];
+        this.entries = new int[tables];
+        this.next = new int[tables][0];
+
+        // Positions are derived from the template length only, so they are stable across restarts
+        Random random = new Random(templateLength);
+        for (int t = 0; t < tables; t++) {
+            positions[t] = samplePositions(random, templateLength, band);
+            keys[t] = new long[INITIAL_TABLE_CAPACITY];
+            heads[t] = new int[INITIAL_TABLE_CAPACITY];
+        }
+    }
+
+    /**
+     * Index the template stored at the given slot
+     */
+    void add(int slot, byte[] data, int offset) {
+        for (int t = 0; t < positions.length; t++) {
+            if (slot >= next[t].length) {
+                next[t] = Arrays.copyOf(next[t], Math.max(INITIAL_TABLE_CAPACITY, slot + (slot >> 1) + 1));
+            }
+            if ((entries[t] + 1) * 2 > heads[t].length) {
+                rehash(t);
+            }
+
+            long signature = signature(positions[t], t, data, offset);
+            long[] tableKeys = keys[t];
+            int[] tableHeads = heads[t];
+            int mask = tableHeads.length - 1;
+            int i = spread(signature) & mask;
+
+            while (tableHeads[i] != 0 && tableKeys[i] != signature) {
+                i = (i + 1) & mask;
+            }
+            if (tableHeads[i] == 0) {
+                tableKeys[i] = signature;
+                entries[t]++;
+            }
+            next[t][slot] = tableHeads[i];
+            tableHeads[i] = slot + 1;
+        }
+    }
+
+    /**
+     * Read-only view for the current snapshot
+     */
+    View view() {
+        return new View(positions, keys.clone(), heads.clone(), next.clone());
+    }
+
+    private void rehash(int t) {
+        long[] oldKeys = keys[t];
+        int[] oldHeads = heads[t];
+        long[] newKeys = new long[oldHeads.length * 2];
+        int[] newHeads = new int[oldHeads.length * 2];
+        int mask = newHeads.length - 1;
+
+        for (int j = 0; j < oldHeads.length; j++) {
+            if (oldHeads[j] == 0) {
+                continue;
+            }
+            int i = spread(oldKeys[j]) & mask;
+            while (newHeads[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newKeys[i] = oldKeys[j];
+            newHeads[i] = oldHeads[j];
+        }
+
+        // Views handed out earlier keep the old arrays, which are never written again
+        keys[t] = newKeys;
+        heads[t] = newHeads;
+    }
+
+    private static long signature(int[] band, int table, byte[] data, int offset) {
+        // FNV-1a over the sampled bytes, seeded per table
+        long hash = 0xcbf29ce484222325L ^ table;
+        for (int position : band) {
+            hash ^= data[offset + position] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int spread(long signature) {
+        long h = signature * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int[] samplePositions(Random random, int templateLength, int band) {
+        int[] all = new int[templateLength];
+        for (int i = 0; i < templateLength; i++) {
+            all[i] = i;
+        }
+        for (int i = 0; i < band; i++) {
+            int j = i + random.nextInt(templateLength - i);
+            int tmp = all[i];
+            all[i] = all[j];
+            all[j] = tmp;
+        }
+        int[] sample = Arrays.copyOf(all, band);
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    /**
+     * Immutable array references captured when a bucket snapshot is published
+     */
+    static final class View {
+
+        private final int[][] positions;
+        private final long[][] keys;
+        private final int[][] heads;
+        private final int[][] next;
+
+        private View(int[][] positions, long[][] keys, int[][] heads, int[][] next) {
+            this.positions = positions;
+            this.keys = keys;
+            this.heads = heads;
+            this.next = next;
+        }
+
+        /**
+         * Slots in [0, count) colliding with the probe in at least one table
+         */
+        BitSet candidates(byte[] probe, int count) {
+            BitSet result = new BitSet(count);
+
+            for (int t = 0; t < positions.length; t++) {
+                long hash = signature(positions[t], t, probe, 0);
+                long[] tableKeys = keys[t];
+                int[] tableHeads = heads[t];
+                int[] tableNext = next[t];
+                int mask = tableHeads.length - 1;
+                int i = spread(hash) & mask;
+
+                while (tableHeads[i] != 0) {
+                    if (tableKeys[i] == hash) {
+                        for (int entry = tableHeads[i]; entry != 0; ) {
+                            int slot = entry - 1;
+                            if (slot < count) {
+                                result.set(slot);
+                            }
+                            entry = slot < tableNext.length ? tableNext[slot] : 0;
+                        }
+                        break;
+                    }
+                    i = (i + 1) & mask;
+                }
+            }
+            return result;
+        }
+    }
+}
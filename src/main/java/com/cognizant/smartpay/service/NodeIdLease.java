@@ -0,0 +1,130 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.NodeIdLeaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snowflake node ID leased from the database, for instances started without app.ids.node-id.
+ *
+ * Scaled-out instances of one App Service share their settings, so configuration
+ * cannot give each its own node ID. Instead each claims a free row of
+ * id_node_leases at startup and renews it every renew-ms; a row not renewed for
+ * ttl-ms can be taken over, so the node ID of a crashed instance is reused.
+ *
+ * The holder only hands out its node ID while its last successful renewal is
+ * younger than half the TTL, so a stalled instance stops issuing IDs well before
+ * another may take its row. This assumes instance clocks agree within that
+ * margin. An instance that finds its row taken claims a new one.
+ */
+@Component
+@Slf4j
+public class NodeIdLease {
+
+    private final NodeIdLeaseRepository repository;
+    private final long ttlMs;
+    private final String holder = UUID.randomUUID().toString();
+
+    // -1 while no lease is held
+    private volatile int nodeId = -1;
+    private volatile long validUntilNanos;
+
+    public NodeIdLease(NodeIdLeaseRepository repository,
+                       @Value("${app.ids.lease.ttl-ms:60000}") long ttlMs) {
+        this.repository = repository;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Claim a free node ID, starting from a random one so starting instances rarely collide
+     *
+     * @throws IllegalStateException when every node ID is held
+     */
+    public synchronized int acquire() {
+        int nodes = (int) SnowflakeIdGenerator.MAX_NODE_ID + 1;
+        int start = ThreadLocalRandom.current().nextInt(nodes);
+        for (int i = 0; i < nodes; i++) {
+            int candidate = (start + i) % nodes;
+            long started = System.nanoTime();
+            if (tryClaim(candidate)) {
+                validUntilNanos = started + TimeUnit.MILLISECONDS.toNanos(ttlMs / 2);
+                nodeId = candidate;
+                log.info("Leased node ID {} for transaction IDs", candidate);
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("All " + nodes + " node IDs in id_node_leases are held; "
+                + "set app.ids.node-id or wait for stale leases to expire");
+    }
+
+    /**
+     * The leased node ID
+     *
+     * @throws IllegalStateException when the lease could not be renewed in time
+     */
+    public long nodeId() {
+        int id = nodeId;
+        if (id < 0 || System.nanoTime() - validUntilNanos > 0) {
+            throw new IllegalStateException("Node ID lease has lapsed, refusing to generate IDs");
+        }
+        return id;
+    }
+
+    @Scheduled(fixedDelayString = "${app.ids.lease.renew-ms:10000}")
+    public void renew() {
+        int id = nodeId;
+        if (id < 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            if (repository.renew(id, holder, LocalDateTime.now()) == 1) {
+                validUntilNanos = started + TimeUnit.MILLISECONDS.toNanos(ttlMs / 2);
+                return;
+            }
+            log.error("Node ID {} was taken over by another instance, leasing a new one", id);
+            nodeId = -1;
+            acquire();
+        } catch (DataAccessException e) {
+            // IDs stop once the lease lapses; the next renewal may still save it
+            log.warn("Could not renew the lease of node ID {}: {}", id, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        int id = nodeId;
+        if (id >= 0) {
+            nodeId = -1;
+            try {
+                repository.release(id, holder);
+            } catch (DataAccessException e) {
+                log.warn("Could not release node ID {}, it frees up once stale: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    private boolean tryClaim(int candidate) {
+        LocalDateTime now = LocalDateTime.now();
+        if (repository.existsById(candidate)) {
+            return repository.takeOver(candidate, holder, now.minus(ttlMs, ChronoUnit.MILLIS), now) == 1;
+        }
+        try {
+            return repository.claim(candidate, holder, now) == 1;
+        } catch (DataIntegrityViolationException e) {
+            // Another instance claimed it in between
+            return false;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cognizant.smartpay.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bit-level (Hamming) template scoring over 64-bit words.
+ *
+ * Templates are read as little-endian long words straight out of the byte arrays
+ * (or mapped buffers), so each 8-byte block costs one XOR and one popcount instead
+ * of eight compares and branches. A trailing partial word is scored byte by byte.
+ *
+ * Only the scoring loop is packed: the gallery still stores templates as byte[]
+ * (and mapped snapshot buffers), shared with the byte-equality matchers, and the
+ * word reads go through a VarHandle view of those bytes. There is no separate
+ * long[] copy of the gallery.
+ *
+ * The raw score is the percentage of equal bits, which is not on the same scale as
+ * the byte-equality score the match threshold was tuned for. In CHANCE calibration
+ * the bit similarity is mapped back onto that scale by removing the agreement two
+ * unrelated bytes have by chance.
+ */
+public class PackedTemplateMatcher implements TemplateMatcher {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Expected fraction of equal bits between two different, uniformly random bytes
+    public static final double CHANCE_BIT_AGREEMENT = 127.0 / 255.0;
+
+    public enum Calibration {
+        /** Report the raw percentage of equal bits */
+        NONE,
+        /** Map bit similarity onto the byte-equality scale used by app.biometric.match-threshold */
+        CHANCE
+    }
+
+    private final Calibration calibration;
+
+    public PackedTemplateMatcher(Calibration calibration) {
+        this.calibration = calibration;
+    }
+
+    @Override
+    public int score(byte[] template, byte[] data, int offset, int length) {
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        long differingBits = 0;
+        int i = 0;
+        int wordBytes = length & ~7;
+        for (; i < wordBytes; i += Long.BYTES) {
+            long a = (long) LONGS.get(template, i);
+            long b = (long) LONGS.get(data, offset + i);
+            differingBits += Long.bitCount(a ^ b);
+        }
+        for (; i < length; i++) {
+            differingBits += Integer.bitCount((template[i] ^ data[offset + i]) & 0xFF);
+        }
+
+        return toScore(differingBits, length);
+    }
+
+    @Override
+    public int score(byte[] template, ByteBuffer data, int offset, int length) {
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        long differingBits = 0;
+        int i = 0;
+        int wordBytes = length & ~7;
+        for (; i < wordBytes; i += Long.BYTES) {
+            long a = (long) LONGS.get(template, i);
+            long b = (long) BUFFER_LONGS.get(data, offset + i);
+            differingBits += Long.bitCount(a ^ b);
+        }
+        for (; i < length; i++) {
+            differingBits += Integer.bitCount((template[i] ^ data.get(offset + i)) & 0xFF);
+        }
+
+        return toScore(differingBits, length);
+    }
+
+    private int toScore(long differingBits, int length) {
+        double similarity = 1.0 - (double) differingBits / ((long) length * Byte.SIZE);
+
+        if (calibration == Calibration.CHANCE) {
+            similarity = (similarity - CHANCE_BIT_AGREEMENT) / (1.0 - CHANCE_BIT_AGREEMENT);
+        }
+
+        return (int) (Math.max(0.0, similarity) * 100);
+    }
+
+    @Override
+    public String name() {
+        return "packed-" + calibration.name().toLowerCase();
+    }
+}
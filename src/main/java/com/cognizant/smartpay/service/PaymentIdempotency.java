@@ -0,0 +1,238 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.entity.IdempotencyRecord;
+import com.cognizant.smartpay.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for payment requests.
+ *
+ * Keys are scoped to the paying user. The first request with a key claims it
+ * with an IN_PROGRESS row in idempotency_keys (unique on user and key) and runs
+ * the payment; a successful payment stores its response in the same database
+ * transaction as the debit, so a key is never COMPLETED without its payment or
+ * the other way round. Later requests with the key get the stored response
+ * without running anything.
+ *
+ * Duplicates arriving on this node while the first execution is running wait on
+ * its future in a bounded in-memory cache and get the same response. Duplicates
+ * on other nodes see the claim and are told the payment is still in progress.
+ * A claim whose execution died (e.g. the node stopped) can be taken over once it
+ * is older than the lease. Server errors release the claim so the client can retry.
+ */
+@Component
+@Slf4j
+public class PaymentIdempotency {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    // Plain JDBC so it joins the payment's transaction under either transaction manager (see GroupCommitExecutor)
+    private static final String COMPLETE_SQL = "UPDATE idempotency_keys SET status = 'COMPLETED', http_status = ?, " +
+            "response_body = ?, completed_at = ? WHERE user_id = ? AND idempotency_key = ? AND status = 'IN_PROGRESS'";
+
+    private static final TypeReference<Map<String, Object>> BODY_TYPE = new TypeReference<>() {
+    };
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CompletableFuture<Response>> recent;
+
+    @Value("${app.payment.idempotency.lease-ms:60000}")
+    private long leaseMs;
+
+    @Value("${app.payment.idempotency.wait-ms:30000}")
+    private long waitMs;
+
+    @Value("${app.payment.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    public PaymentIdempotency(IdempotencyRecordRepository idempotencyRecordRepository,
+                              JdbcTemplate jdbcTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${app.payment.idempotency.cache.max-size:10000}") long maxSize,
+                              @Value("${app.payment.idempotency.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Run the action at most once per user and key, or return the response of the run that did
+     */
+    public Response execute(Long userId, String key, Supplier<Response> action) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String cacheKey = userId + ":" + key;
+        CompletableFuture<Response> mine = new CompletableFuture<>();
+        CompletableFuture<Response> running = recent.asMap().putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            return awaitDuplicate(running);
+        }
+
+        try {
+            Response response = claimAndRun(userId, key, action);
+            mine.complete(response);
+            if (response.getStatus() >= 500 || response.getStatus() == 409) {
+                // Not a final answer; the next attempt decides again
+                recent.asMap().remove(cacheKey, mine);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            recent.asMap().remove(cacheKey, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Store a successful response; call inside the payment's transaction
+     */
+    public void completeInTransaction(Long userId, String key, Map<String, Object> body) {
+        if (jdbcTemplate.update(COMPLETE_SQL, 200, toJson(body), LocalDateTime.now(), userId, key) == 0) {
+            // Only the execution holding the claim gets here, so the row must still be IN_PROGRESS
+            throw new IllegalStateException("Idempotency key " + key + " is no longer claimed");
+        }
+    }
+
+    /**
+     * Remove records past the retention period
+     */
+    @Scheduled(fixedDelayString = "${app.payment.idempotency.cleanup-interval-ms:3600000}")
+    public void purgeExpired() {
+        int deleted = idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            log.info("Removed {} idempotency keys older than {} hours", deleted, retentionHours);
+        }
+    }
+
+    private Response claimAndRun(Long userId, String key, Supplier<Response> action) {
+        Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key);
+        if (existing.isEmpty()) {
+            existing = claim(userId, key);
+        }
+
+        if (existing.isPresent()) {
+            IdempotencyRecord record = existing.get();
+            if (record.getStatus() == IdempotencyRecord.Status.COMPLETED) {
+                return new Response(record.getHttpStatus(), fromJson(record.getResponseBody()), true);
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (idempotencyRecordRepository.takeOver(userId, key, record.getLockedAt(),
+                    now.minus(Duration.ofMillis(leaseMs)), now) == 0) {
+                return inProgress();
+            }
+            log.warn("Taking over stale idempotency key {} of user {} claimed at {}", key, userId, record.getLockedAt());
+        }
+
+        Response response = action.get();
+        if (response.getStatus() >= 500) {
+            // The payment transaction rolled back; let the client retry with the same key
+            idempotencyRecordRepository.release(userId, key);
+        } else {
+            // Successful payments were stored with the debit; this records rejections (a no-op otherwise)
+            idempotencyRecordRepository.complete(userId, key, response.getStatus(),
+                    toJson(response.getBody()), LocalDateTime.now());
+        }
+        return response;
+    }
+
+    /**
+     * Insert the IN_PROGRESS row; returns the existing record when another request claimed the key first
+     */
+    private Optional<IdempotencyRecord> claim(Long userId, String key) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setUserId(userId);
+        record.setIdempotencyKey(key);
+        record.setStatus(IdempotencyRecord.Status.IN_PROGRESS);
+        try {
+            idempotencyRecordRepository.saveAndFlush(record);
+            return Optional.empty();
+        } catch (DataIntegrityViolationException e) {
+            return Optional.of(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, key)
+                    .orElseThrow(() -> e));
+        }
+    }
+
+    private Response awaitDuplicate(CompletableFuture<Response> running) {
+        try {
+            return running.get(waitMs, TimeUnit.MILLISECONDS).replayed();
+        } catch (TimeoutException e) {
+            return inProgress();
+        } catch (ExecutionException e) {
+            // The first execution failed without a response; it released its claim
+            return inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return inProgress();
+        }
+    }
+
+    private static Response inProgress() {
+        return new Response(409, Map.of(
+                "error", "A payment with this Idempotency-Key is still being processed",
+                "status", "in_progress"), false);
+    }
+
+    private String toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize payment response", e);
+        }
+    }
+
+    private Map<String, Object> fromJson(String body) {
+        try {
+            return objectMapper.readValue(body, BODY_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored payment response is not valid JSON", e);
+        }
+    }
+
+    /**
+     * HTTP status and body of a payment request
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Response {
+
+        private final int status;
+        private final Map<String, Object> body;
+
+        /** Whether this is a stored response rather than a new execution */
+        private final boolean replayed;
+
+        Response replayed() {
+            return replayed ? this : new Response(status, body, true);
+        }
+    }
+}
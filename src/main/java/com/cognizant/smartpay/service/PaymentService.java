@@ -2,121 +2,185 @@ package com.cognizant.smartpay.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Service for payment processing
+ * Service for payment processing.
+ *
+ * Checkout costs a fixed number of round trips whatever the basket size:
+ * transaction items and stock decrements are each sent as one JDBC batch
+ * (a single multi-row statement with rewriteBatchedStatements), the
+ * transaction ID comes back as a generated key, and the wallet balance is read
+ * with the cart, so the new balance is known without reading it back.
+ *
+ * The wallet is debited with a compare-and-set UPDATE that only applies while
+ * the balance is still the one read with the cart, so two concurrent checkouts
+ * can never both spend the same money and no row is locked before the debit.
+ * If the balance changed in between, it is read again under a row lock and the
+ * debit repeated once. A checkout that loses a deadlock or lock wait is
+ * rolled back as a whole and retried a bounded number of times with jittered
+ * exponential backoff.
+ *
+ * With app.payment.group-commit.enabled, concurrent checkouts share database
+ * transactions through the {@link GroupCommitExecutor}.
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class PaymentService {
 
+    private static final String CART_SQL = """
+            SELECT c.cart_id, ci.product_id, ci.quantity, ci.subtotal, p.selling_price, p.name, p.brand, w.balance
+            FROM cart c
+            JOIN cart_items ci ON c.cart_id = ci.cart_id
+            JOIN products p ON ci.product_id = p.product_id
+            LEFT JOIN wallet w ON w.user_id = c.user_id
+            WHERE c.user_id = ? AND c.is_active = 1
+            """;
+
+    private static final String TRANSACTION_SQL = """
+            INSERT INTO transactions (transaction_reference, user_id, cart_id, total_amount, final_amount, payment_method, payment_status, wallet_balance_before, wallet_balance_after, items_count, transaction_date)
+            VALUES (?, ?, ?, ?, ?, 'WALLET', 'SUCCESS', ?, ?, ?, NOW())
+            """;
+
+    private static final String ITEM_SQL = """
+            INSERT INTO transaction_items (transaction_id, product_id, product_name, product_brand, quantity, unit_price, subtotal)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String DEBIT_SQL = "UPDATE wallet SET balance = ? WHERE user_id = ? AND balance = ?";
+
+    // A locking read sees the latest committed balance, not the transaction's snapshot
+    private static final String LOCK_WALLET_SQL = "SELECT balance FROM wallet WHERE user_id = ? FOR UPDATE";
+
+    private static final String STOCK_SQL = "UPDATE products SET stock_quantity = stock_quantity - ? WHERE product_id = ?";
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentIdempotency paymentIdempotency;
+    private final SnowflakeIdGenerator idGenerator;
+    private final GroupCommitExecutor groupCommitExecutor;
+
+    @Value("${app.payment.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.payment.retry.backoff-ms:20}")
+    private long backoffMs;
+
+    @Value("${app.payment.retry.max-backoff-ms:200}")
+    private long maxBackoffMs;
 
     /**
      * Process payment for user's cart
      */
-    @Transactional
     public Map<String, Object> processPayment(Long userId) {
+        return processPayment(userId, null);
+    }
+
+    /**
+     * Process payment for user's cart under a claimed Idempotency-Key (null for none);
+     * the response is stored with the key in the payment's own transaction
+     */
+    public Map<String, Object> processPayment(Long userId, String idempotencyKey) {
         log.info("Processing payment for user: {}", userId);
 
+        for (int attempt = 1; ; attempt++) {
+            try {
+                TransactionCallback<Map<String, Object>> payment = status -> {
+                    Map<String, Object> result = checkout(userId);
+                    if (idempotencyKey != null) {
+                        paymentIdempotency.completeInTransaction(userId, idempotencyKey, result);
+                    }
+                    return result;
+                };
+                // Group commit shares one transaction (behind per-payment savepoints) among a burst of checkouts
+                return groupCommitExecutor.isEnabled()
+                        ? groupCommitExecutor.execute(payment)
+                        : transactionTemplate.execute(payment);
+            } catch (ConcurrencyFailureException e) {
+                // Deadlock victim or lock wait timeout: nothing was committed, so the checkout can run again
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                log.warn("Checkout for user {} hit lock contention (attempt {} of {}), retrying in {} ms: {}",
+                        userId, attempt, maxAttempts, delay, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> checkout(Long userId) {
         // Get user's cart
-        String cartSql = """
-            SELECT c.cart_id, ci.cart_item_id, ci.product_id, ci.quantity, ci.subtotal, p.selling_price, p.name, p.brand
-            FROM cart c
-            JOIN cart_items ci ON c.cart_id = ci.cart_id
-            JOIN products p ON ci.product_id = p.product_id
-            WHERE c.user_id = ? AND c.is_active = 1
-            """;
-        List<Map<String, Object>> cartItems = jdbcTemplate.query(cartSql, (rs, rowNum) -> {
-            Map<String, Object> item = new HashMap<>();
-            item.put("cartId", rs.getLong("cart_id"));
-            item.put("cartItemId", rs.getLong("cart_item_id"));
-            item.put("productId", rs.getLong("product_id"));
-            item.put("quantity", rs.getInt("quantity"));
-            item.put("subtotal", rs.getBigDecimal("subtotal"));
-            item.put("unitPrice", rs.getBigDecimal("selling_price"));
-            item.put("productName", rs.getString("name"));
-            item.put("productBrand", rs.getString("brand"));
-            return item;
-        }, userId);
-
-        if (cartItems.isEmpty()) {
+        List<CartLine> cartLines = jdbcTemplate.query(CART_SQL, (rs, rowNum) -> new CartLine(
+                rs.getLong("cart_id"),
+                rs.getLong("product_id"),
+                rs.getInt("quantity"),
+                rs.getBigDecimal("subtotal"),
+                rs.getBigDecimal("selling_price"),
+                rs.getString("name"),
+                rs.getString("brand"),
+                rs.getBigDecimal("balance")), userId);
+
+        if (cartLines.isEmpty()) {
             throw new IllegalArgumentException("Cart is empty");
         }
 
         // Calculate total
-        BigDecimal totalAmount = cartItems.stream()
-            .map(item -> (BigDecimal) item.get("subtotal"))
+        BigDecimal totalAmount = cartLines.stream()
+            .map(line -> line.subtotal)
             .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        // Check wallet balance
-        String walletSql = "SELECT balance FROM wallet WHERE user_id = ?";
-        BigDecimal walletBalance = jdbcTemplate.queryForObject(walletSql, BigDecimal.class, userId);
-
-        if (walletBalance.compareTo(totalAmount) < 0) {
-            throw new IllegalArgumentException("Insufficient wallet balance");
-        }
+        // Debit the wallet from the balance read with the cart
+        BigDecimal newBalance = debit(userId, cartLines.get(0).walletBalance, totalAmount);
+        BigDecimal walletBalance = newBalance.add(totalAmount);
 
         // Get cart ID for transaction
-        Long cartId = (Long) cartItems.get(0).get("cartId");
+        long cartId = cartLines.get(0).cartId;
 
-        // Generate transaction reference
-        String transactionReference = "TXN" + System.currentTimeMillis();
+        // Generate transaction reference (unique across nodes, even within one millisecond)
+        String transactionReference = idGenerator.nextReference("TXN");
 
-        // Create transaction record
-        String transactionSql = """
-            INSERT INTO transactions (transaction_reference, user_id, cart_id, total_amount, final_amount, payment_method, payment_status, wallet_balance_before, wallet_balance_after, items_count, transaction_date)
-            VALUES (?, ?, ?, ?, ?, 'WALLET', 'SUCCESS', ?, ?, ?, NOW())
-            """;
-        jdbcTemplate.update(transactionSql,
-            transactionReference,
-            userId,
-            cartId,
-            totalAmount,
-            totalAmount,
-            walletBalance,
-            walletBalance.subtract(totalAmount),
-            cartItems.size());
-
-        // Get the transaction ID that was just inserted
-        String getTransactionIdSql = "SELECT transaction_id FROM transactions WHERE transaction_reference = ?";
-        Long transactionId = jdbcTemplate.queryForObject(getTransactionIdSql, Long.class, transactionReference);
-
-        // Create transaction items
-        for (Map<String, Object> item : cartItems) {
-            String itemSql = """
-                INSERT INTO transaction_items (transaction_id, product_id, product_name, product_brand, quantity, unit_price, subtotal)
-                VALUES (?, ?, ?, ?, ?, ?, ?)
-                """;
-            jdbcTemplate.update(itemSql,
-                transactionId,
-                item.get("productId"),
-                item.get("productName"),
-                item.get("productBrand"),
-                item.get("quantity"),
-                item.get("unitPrice"),
-                item.get("subtotal"));
-        }
-
-        // Update wallet balance
-        String updateWalletSql = "UPDATE wallet SET balance = balance - ? WHERE user_id = ?";
-        jdbcTemplate.update(updateWalletSql, totalAmount, userId);
+        // Create transaction record; the ID comes back as a generated key
+        long transactionId = insertTransaction(transactionReference, userId, cartId, totalAmount,
+                walletBalance, newBalance, cartLines.size());
 
-        // Update product stock
-        for (Map<String, Object> item : cartItems) {
-            String updateStockSql = "UPDATE products SET stock_quantity = stock_quantity - ? WHERE product_id = ?";
-            jdbcTemplate.update(updateStockSql, item.get("quantity"), item.get("productId"));
+        // Create transaction items (one batch)
+        List<Object[]> itemRows = new ArrayList<>(cartLines.size());
+        for (CartLine line : cartLines) {
+            itemRows.add(new Object[]{transactionId, line.productId, line.productName, line.productBrand,
+                    line.quantity, line.unitPrice, line.subtotal});
         }
+        jdbcTemplate.batchUpdate(ITEM_SQL, itemRows);
+
+        // Update product stock (one batch, in product order so concurrent checkouts lock rows in the same order)
+        List<Object[]> stockRows = cartLines.stream()
+            .sorted(Comparator.comparingLong(line -> line.productId))
+            .map(line -> new Object[]{line.quantity, line.productId})
+            .toList();
+        jdbcTemplate.batchUpdate(STOCK_SQL, stockRows);
 
         // Clear cart
         String clearCartSql = "DELETE FROM cart_items WHERE cart_id = ?";
@@ -125,9 +189,6 @@ public class PaymentService {
         String deactivateCartSql = "UPDATE cart SET is_active = 0 WHERE cart_id = ?";
         jdbcTemplate.update(deactivateCartSql, cartId);
 
-        // Get new wallet balance
-        BigDecimal newBalance = jdbcTemplate.queryForObject(walletSql, BigDecimal.class, userId);
-
         log.info("Payment processed successfully for user: {}, transaction: {}, amount: {}",
             userId, transactionReference, totalAmount);
 
@@ -142,4 +203,94 @@ public class PaymentService {
 
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Debit the wallet if it still holds the given balance (null when none was read); returns the new balance.
+     * Otherwise the balance is read again under a row lock and the debit repeated on it.
+     */
+    private BigDecimal debit(Long userId, BigDecimal balance, BigDecimal amount) {
+        if (balance != null) {
+            BigDecimal newBalance = debitFrom(balance, amount);
+            if (jdbcTemplate.update(DEBIT_SQL, newBalance, userId, balance) == 1) {
+                return newBalance;
+            }
+        }
+
+        List<BigDecimal> locked = jdbcTemplate.queryForList(LOCK_WALLET_SQL, BigDecimal.class, userId);
+        if (locked.isEmpty()) {
+            throw new IllegalArgumentException("Wallet not found");
+        }
+        BigDecimal current = locked.get(0);
+        BigDecimal newBalance = debitFrom(current, amount);
+        // The row is locked, so the compare-and-set cannot miss again
+        if (jdbcTemplate.update(DEBIT_SQL, newBalance, userId, current) == 0) {
+            throw new IllegalStateException("Wallet of user " + userId + " changed under a row lock");
+        }
+        return newBalance;
+    }
+
+    private static BigDecimal debitFrom(BigDecimal balance, BigDecimal amount) {
+        if (balance.compareTo(amount) < 0) {
+            throw new IllegalArgumentException("Insufficient wallet balance");
+        }
+        return balance.subtract(amount);
+    }
+
+    /**
+     * Full-jitter exponential backoff before the given retry
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private long insertTransaction(String transactionReference, Long userId, long cartId, BigDecimal totalAmount,
+                                   BigDecimal balanceBefore, BigDecimal balanceAfter, int itemsCount) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(TRANSACTION_SQL, new String[]{"transaction_id"});
+            statement.setString(1, transactionReference);
+            statement.setLong(2, userId);
+            statement.setLong(3, cartId);
+            statement.setBigDecimal(4, totalAmount);
+            statement.setBigDecimal(5, totalAmount);
+            statement.setBigDecimal(6, balanceBefore);
+            statement.setBigDecimal(7, balanceAfter);
+            statement.setInt(8, itemsCount);
+            return statement;
+        }, keyHolder);
+
+        Number key = keyHolder.getKey();
+        if (key == null) {
+            throw new IllegalStateException("No transaction ID generated for " + transactionReference);
+        }
+        return key.longValue();
+    }
+
+    /**
+     * A cart item joined with its product, and the wallet balance (null without a wallet)
+     */
+    private static final class CartLine {
+
+        private final long cartId;
+        private final long productId;
+        private final int quantity;
+        private final BigDecimal subtotal;
+        private final BigDecimal unitPrice;
+        private final String productName;
+        private final String productBrand;
+        private final BigDecimal walletBalance;
+
+        CartLine(long cartId, long productId, int quantity, BigDecimal subtotal, BigDecimal unitPrice,
+                 String productName, String productBrand, BigDecimal walletBalance) {
+            this.cartId = cartId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.subtotal = subtotal;
+            this.unitPrice = unitPrice;
+            this.productName = productName;
+            this.productBrand = productBrand;
+            this.walletBalance = walletBalance;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.cognizant.smartpay.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-equality matcher in plain Java (reference implementation)
+ */
+public class ScalarTemplateMatcher implements TemplateMatcher {
+
+    /**
+     * Match fingerprint templates (simplified version)
+     */
+    @Override
+    public int score(byte[] template, byte[] data, int offset, int length) {
+        // This is a simplified matching algorithm
+        // In production, use vendor SDK (DigitalPersona, Mantra, etc.)
+
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        // Simple byte-by-byte comparison
+        int matches = 0;
+        for (int i = 0; i < length; i++) {
+            if (template[i] == data[offset + i]) {
+                matches++;
+            }
+        }
+
+        return (int) ((double) matches / length * 100);
+    }
+
+    @Override
+    public int score(byte[] template, ByteBuffer data, int offset, int length) {
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        int matches = 0;
+        for (int i = 0; i < length; i++) {
+            if (template[i] == data.get(offset + i)) {
+                matches++;
+            }
+        }
+
+        return (int) ((double) matches / length * 100);
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,70 @@
+package com.cognizant.smartpay.service;
+
+import java.util.Arrays;
+
+/**
+ * Consistent-hash ring assigning biometric IDs to gallery shards.
+ *
+ * Every shard is placed on the ring at a number of pseudo-random points
+ * (virtual nodes) and owns the IDs hashing to the arc before each of its
+ * points. The ring depends only on the shard count and virtual node count,
+ * so every node computes the same assignment without coordination, and
+ * adding a shard only moves about 1/N of the templates.
+ */
+public final class ShardRing {
+
+    private final int shardCount;
+    private final long[] points;
+    private final int[] owners;
+
+    public ShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Shard count and virtual nodes must be positive");
+        }
+        this.shardCount = shardCount;
+
+        int size = shardCount * virtualNodes;
+        long[][] entries = new long[size][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                long point = mix(((long) shard << 32) | node);
+                entries[shard * virtualNodes + node] = new long[]{point, shard};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Shard owning the given biometric ID
+     */
+    public int shardOf(long biometricId) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        int i = Arrays.binarySearch(points, mix(biometricId ^ 0x5bd1e9955bd1e995L));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads sequential IDs evenly over the ring
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
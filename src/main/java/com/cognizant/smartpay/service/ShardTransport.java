@@ -0,0 +1,34 @@
+package com.cognizant.smartpay.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * How the sharded identifier reaches the gallery shards.
+ *
+ * {@link LocalShardTransport} keeps every shard in this JVM (no cluster needed);
+ * {@link HttpShardTransport} calls the peer nodes' internal shard endpoints and
+ * serves its own shard directly.
+ */
+public interface ShardTransport {
+
+    /**
+     * Identify the probe within one shard; completes exceptionally when the shard cannot answer
+     */
+    CompletableFuture<IdentificationResult> identify(int shard, byte[] probe, String deviceType, int threshold);
+
+    /**
+     * Add a newly enrolled template to the shard that owns it
+     */
+    void add(int shard, long biometricId, long userId, String deviceType, byte[] template);
+
+    /**
+     * Remove a deactivated template from the shard that owns it
+     */
+    void remove(int shard, long biometricId);
+
+    /**
+     * Stop any threads or connections held by the transport
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,325 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.ShardIdentifyResponse;
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1:N identification over a gallery partitioned across shards.
+ *
+ * Templates are assigned to shards by biometric ID on a {@link ShardRing}, so
+ * each shard holds about 1/N of the gallery. A probe is scattered to every
+ * shard in parallel, each shard scores only its own templates, and the per-shard
+ * best and runner-up candidates are merged into one result with the same
+ * threshold and ambiguity rules as a single gallery.
+ *
+ * Every shard gets app.biometric.sharding.timeout-ms to answer. A shard that is
+ * down or late is left out and the result is marked timed out. In first mode a
+ * match found by the shards that did answer is still returned; in best mode it
+ * is INCOMPLETE instead, since the missing shard could hold another user's
+ * template within the ambiguity margin.
+ *
+ * With transport=local all shards are in-process galleries (the application's
+ * gallery is shard shard-index); with transport=http shard i is served by peer i
+ * of app.biometric.sharding.peers and this node serves shard shard-index.
+ */
+@Component
+@Slf4j
+public class ShardedIdentifier {
+
+    private final BiometricGallery biometricGallery;
+    private final BiometricRepository biometricRepository;
+    private final TemplateMatchEngine templateMatchEngine;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.biometric.sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.biometric.sharding.shard-count:1}")
+    private int shardCount;
+
+    @Value("${app.biometric.sharding.shard-index:0}")
+    private int shardIndex;
+
+    @Value("${app.biometric.sharding.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${app.biometric.sharding.transport:local}")
+    private String transportType;
+
+    @Value("${app.biometric.sharding.peers:}")
+    private List<String> peers;
+
+    @Value("${app.biometric.sharding.timeout-ms:300}")
+    private long timeoutMs;
+
+    @Value("${app.biometric.sharding.token:}")
+    private String token;
+
+    @Value("${app.biometric.match-threshold:85}")
+    private int matchThreshold;
+
+    @Value("${app.biometric.identification.mode:first}")
+    private String mode;
+
+    @Value("${app.biometric.identification.ambiguity-margin:3}")
+    private int ambiguityMargin;
+
+    private ShardRing ring;
+    private GalleryShard localShard;
+    private ShardTransport transport;
+    private ExecutorService executor;
+
+    public ShardedIdentifier(BiometricGallery biometricGallery,
+                             BiometricRepository biometricRepository,
+                             TemplateMatchEngine templateMatchEngine,
+                             ObjectMapper objectMapper) {
+        this.biometricGallery = biometricGallery;
+        this.biometricRepository = biometricRepository;
+        this.templateMatchEngine = templateMatchEngine;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard index " + shardIndex + " is outside 0.." + (shardCount - 1));
+        }
+
+        ring = new ShardRing(shardCount, virtualNodes);
+        localShard = new GalleryShard(biometricGallery, templateMatchEngine);
+        executor = Executors.newFixedThreadPool(
+                Math.max(shardCount, Runtime.getRuntime().availableProcessors()), daemonThreads());
+
+        if ("http".equalsIgnoreCase(transportType)) {
+            List<String> peerUrls = peers.stream().filter(peer -> !peer.isBlank()).toList();
+            if (peerUrls.size() != shardCount) {
+                throw new IllegalArgumentException("Sharding over http needs one peer URL per shard, got "
+                        + peerUrls.size() + " for " + shardCount + " shards");
+            }
+            if (token.isBlank()) {
+                throw new IllegalArgumentException("Sharding over http needs app.biometric.sharding.token");
+            }
+            transport = new HttpShardTransport(peerUrls, shardIndex, localShard, executor, objectMapper,
+                    token, Duration.ofMillis(timeoutMs));
+        } else if ("local".equalsIgnoreCase(transportType)) {
+            List<GalleryShard> shards = new ArrayList<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                if (shard == shardIndex) {
+                    shards.add(localShard);
+                    continue;
+                }
+                BiometricGallery gallery = BiometricGallery.shard(biometricRepository,
+                        biometricGallery.lshTables(), biometricGallery.lshBandSize(), ring, shard);
+                gallery.load();
+                shards.add(new GalleryShard(gallery, templateMatchEngine));
+            }
+            transport = new LocalShardTransport(shards, executor);
+        } else {
+            throw new IllegalArgumentException("Unsupported shard transport: " + transportType);
+        }
+
+        log.info("Sharded identification over {} shards ({} transport), this node holds shard {} with {} templates",
+                shardCount, transportType, shardIndex, biometricGallery.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (transport != null) {
+            transport.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Identify the probe across all shards
+     */
+    public IdentificationResult identify(byte[] probe, String deviceType) {
+        long started = System.nanoTime();
+
+        List<CompletableFuture<IdentificationResult>> pending = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            pending.add(transport.identify(shard, probe, deviceType, matchThreshold)
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .exceptionally(failure -> {
+                        log.warn("Shard {} did not answer: {}", target, failure.getMessage());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+
+        List<IdentificationResult> results = new ArrayList<>(shardCount);
+        for (CompletableFuture<IdentificationResult> future : pending) {
+            results.add(future.join());
+        }
+        return merge(results, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+    }
+
+    /**
+     * Publish a newly enrolled template to the shard that owns it.
+     * Returns false when there is no template to match against.
+     */
+    public boolean added(Long biometricId, Long userId, String deviceType, byte[] template) {
+        if (biometricId == null || userId == null || template == null || template.length == 0) {
+            return false;
+        }
+        transport.add(ring.shardOf(biometricId), biometricId, userId, deviceType, template);
+        return true;
+    }
+
+    /**
+     * Drop a deactivated template from the shard that owns it
+     */
+    public void removed(Long biometricId) {
+        transport.remove(ring.shardOf(biometricId), biometricId);
+    }
+
+    /**
+     * Identify within this node's shard (served to peers); the local threshold applies when none is given
+     */
+    public IdentificationResult identifyLocal(byte[] probe, String deviceType, Integer threshold) {
+        return localShard.identify(probe, deviceType, threshold != null ? threshold : matchThreshold);
+    }
+
+    /**
+     * Add a template to this node's shard (sent by the peer that enrolled it)
+     */
+    public boolean addLocal(long biometricId, long userId, String deviceType, byte[] template) {
+        return localShard.add(biometricId, userId, deviceType, template);
+    }
+
+    /**
+     * Remove a template from this node's shard (sent by the peer that deactivated it)
+     */
+    public void removeLocal(long biometricId) {
+        localShard.remove(biometricId);
+    }
+
+    /**
+     * Whether a request carries the shared shard token
+     */
+    public boolean isTrusted(String requestToken) {
+        return requestToken != null && !token.isBlank()
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Merge per-shard results (null for shards that did not answer) into one
+     */
+    IdentificationResult merge(List<IdentificationResult> results, long elapsedMicros) {
+        List<TemplateMatchEngine.Match> candidates = new ArrayList<>();
+        long comparisons = 0;
+        boolean timedOut = false;
+        boolean missing = false;
+        for (IdentificationResult result : results) {
+            if (result == null) {
+                timedOut = true;
+                missing = true;
+                continue;
+            }
+            comparisons += result.getComparisons();
+            timedOut |= result.isTimedOut();
+            if (result.getBest() != null) {
+                candidates.add(result.getBest());
+            }
+            if (result.getRunnerUp() != null) {
+                candidates.add(result.getRunnerUp());
+            }
+        }
+
+        TemplateMatchEngine.Match best = null;
+        for (TemplateMatchEngine.Match candidate : candidates) {
+            if (best == null || candidate.getScore() > best.getScore()) {
+                best = candidate;
+            }
+        }
+        if (best == null || best.getScore() < matchThreshold) {
+            return new IdentificationResult(IdentificationResult.Status.NO_MATCH, null, null,
+                    comparisons, timedOut, elapsedMicros);
+        }
+
+        TemplateMatchEngine.Match runnerUp = null;
+        for (TemplateMatchEngine.Match candidate : candidates) {
+            if (candidate.getUserId() != best.getUserId()
+                    && (runnerUp == null || candidate.getScore() > runnerUp.getScore())) {
+                runnerUp = candidate;
+            }
+        }
+        boolean bestMode = "best".equalsIgnoreCase(mode);
+        if (bestMode && runnerUp != null && runnerUp.getScore() >= matchThreshold
+                && best.getScore() - runnerUp.getScore() <= ambiguityMargin) {
+            return new IdentificationResult(IdentificationResult.Status.AMBIGUOUS, best, runnerUp,
+                    comparisons, timedOut, elapsedMicros);
+        }
+        if (bestMode && missing) {
+            return new IdentificationResult(IdentificationResult.Status.INCOMPLETE, best, runnerUp,
+                    comparisons, timedOut, elapsedMicros);
+        }
+        return new IdentificationResult(IdentificationResult.Status.MATCH, best, runnerUp,
+                comparisons, timedOut, elapsedMicros);
+    }
+
+    /**
+     * Wire form of a shard's result
+     */
+    public static ShardIdentifyResponse toResponse(IdentificationResult result) {
+        return new ShardIdentifyResponse(result.getStatus().name(), toWire(result.getBest()),
+                toWire(result.getRunnerUp()), result.getComparisons(), result.isTimedOut(), result.getElapsedMicros());
+    }
+
+    static IdentificationResult fromResponse(ShardIdentifyResponse response) {
+        return new IdentificationResult(IdentificationResult.Status.valueOf(response.getStatus()),
+                fromWire(response.getBest()), fromWire(response.getRunnerUp()),
+                response.getComparisons() != null ? response.getComparisons() : 0,
+                Boolean.TRUE.equals(response.getTimedOut()),
+                response.getElapsedMicros() != null ? response.getElapsedMicros() : 0);
+    }
+
+    private static ShardIdentifyResponse.ShardMatch toWire(TemplateMatchEngine.Match match) {
+        return match == null ? null
+                : new ShardIdentifyResponse.ShardMatch(match.getBiometricId(), match.getUserId(), match.getScore());
+    }
+
+    private static TemplateMatchEngine.Match fromWire(ShardIdentifyResponse.ShardMatch match) {
+        // The slot only means something inside the remote gallery
+        return match == null ? null
+                : new TemplateMatchEngine.Match(-1, match.getBiometricId(), match.getUserId(), match.getScore());
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "shard-scatter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake-style 64-bit IDs, unique across nodes without coordination.
+ *
+ * An ID is 41 bits of milliseconds since 2024-01-01 UTC, a 10 bit node ID
+ * (app.ids.node-id) and a 12 bit sequence within the millisecond. The last timestamp and sequence are packed into one AtomicLong
+ * and advanced with a CAS loop, so generation never locks; IDs from one node
+ * are strictly increasing.
+ *
+ * When the sequence of a millisecond runs out the caller spins into the next
+ * one. When the clock moves backwards (e.g. an NTP step) the caller waits for it
+ * to catch up, up to app.ids.max-clock-regression-ms; a larger regression is
+ * refused rather than risking duplicates.
+ *
+ * Uniqueness rests on every running instance having its own node ID. It can be
+ * configured (e.g. from the pod ordinal of a StatefulSet); without one the
+ * instance leases a free node ID from the database (see NodeIdLease), which is
+ * what scaled-out instances sharing one configuration rely on.
+ */
+@Component
+@Slf4j
+public class SnowflakeIdGenerator {
+
+    static final long EPOCH_MS = 1704067200000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final LongSupplier nodeId;
+    private final long maxClockRegressionMs;
+    private final LongSupplier clock;
+
+    // (milliseconds since epoch << SEQUENCE_BITS) | sequence of the last issued ID
+    private final AtomicLong last = new AtomicLong();
+
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${app.ids.node-id:}") String nodeId,
+                                @Value("${app.ids.max-clock-regression-ms:5000}") long maxClockRegressionMs,
+                                NodeIdLease lease) {
+        this(nodeIdSource(nodeId, lease), maxClockRegressionMs, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long nodeId, long maxClockRegressionMs, LongSupplier clock) {
+        this(fixed(nodeId), maxClockRegressionMs, clock);
+    }
+
+    private SnowflakeIdGenerator(LongSupplier nodeId, long maxClockRegressionMs, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.maxClockRegressionMs = maxClockRegressionMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Next ID of this node
+     */
+    public long nextId() {
+        long nodeBits = nodeId.getAsLong() << SEQUENCE_BITS;
+        while (true) {
+            long now = clock.getAsLong() - EPOCH_MS;
+            long previous = last.get();
+            long previousMs = previous >>> SEQUENCE_BITS;
+
+            long next;
+            if (now > previousMs) {
+                next = now << SEQUENCE_BITS;
+            } else if (now == previousMs) {
+                if ((previous & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    // This millisecond is used up
+                    Thread.onSpinWait();
+                    continue;
+                }
+                next = previous + 1;
+            } else {
+                awaitClock(previousMs - now);
+                continue;
+            }
+
+            if (last.compareAndSet(previous, next)) {
+                long ms = next >>> SEQUENCE_BITS;
+                return (ms << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Next ID as a transaction reference
+     */
+    public String nextReference(String prefix) {
+        return prefix + nextId();
+    }
+
+    /**
+     * The configured node ID, or one leased from the database when none is set
+     */
+    static LongSupplier nodeIdSource(String nodeId, NodeIdLease lease) {
+        if (nodeId == null || nodeId.isBlank()) {
+            lease.acquire();
+            return lease::nodeId;
+        }
+        long configured;
+        try {
+            configured = Long.parseLong(nodeId.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("app.ids.node-id must be a number, got '" + nodeId + "'", e);
+        }
+        log.info("Transaction IDs generated for node {}", configured);
+        return fixed(configured);
+    }
+
+    private static LongSupplier fixed(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        return () -> nodeId;
+    }
+
+    private void awaitClock(long behindMs) {
+        if (behindMs > maxClockRegressionMs) {
+            throw new IllegalStateException("Clock moved back " + behindMs + " ms, refusing to generate IDs");
+        }
+        log.warn("Clock moved back {} ms, waiting for it to catch up", behindMs);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(behindMs));
+    }
+}
@@ -0,0 +1,538 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parallel 1:N fingerprint identification over the template gallery.
+ *
+ * The gallery snapshot is split into chunks which are scored on a dedicated
+ * ForkJoinPool (so matching never competes with the common pool or request
+ * threads). Each chunk keeps a bounded top-k of its best scoring users which are
+ * merged on the way back up.
+ *
+ * Two modes are supported (app.biometric.identification.mode):
+ * <ul>
+ *   <li>first - accept the first template at or above the threshold; the other
+ *       chunks stop at their next cancellation check</li>
+ *   <li>best - score every candidate and return the best one, or an ambiguous
+ *       result when another user's best score is within the ambiguity margin</li>
+ * </ul>
+ * Both modes stop at the per-request time budget and return the best match seen so far.
+ */
+@Component
+@Slf4j
+public class TemplateMatchEngine {
+
+    // How many slots a chunk scores between cancellation checks
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final TemplateMatcher matcher;
+    private final boolean lshFallbackFullScan;
+    private final boolean bestMatch;
+    private final int topK;
+    private final int ambiguityMargin;
+    private final long timeBudgetNanos;
+
+    public TemplateMatchEngine(TemplateMatcher matcher,
+                               @Value("${app.biometric.match-parallelism:0}") int parallelism,
+                               @Value("${app.biometric.match-chunk-size:4096}") int chunkSize,
+                               @Value("${app.biometric.lsh.fallback-full-scan:true}") boolean lshFallbackFullScan,
+                               @Value("${app.biometric.identification.mode:first}") String mode,
+                               @Value("${app.biometric.identification.top-k:5}") int topK,
+                               @Value("${app.biometric.identification.ambiguity-margin:3}") int ambiguityMargin,
+                               @Value("${app.biometric.identification.time-budget-ms:500}") long timeBudgetMs) {
+        int threads = parallelism > 0
+                ? Math.min(parallelism, Runtime.getRuntime().availableProcessors())
+                : Runtime.getRuntime().availableProcessors();
+
+        if (!"first".equalsIgnoreCase(mode) && !"best".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("Unsupported identification mode: " + mode);
+        }
+
+        this.matcher = matcher;
+        this.lshFallbackFullScan = lshFallbackFullScan;
+        this.bestMatch = "best".equalsIgnoreCase(mode);
+        this.topK = Math.max(2, topK);
+        this.ambiguityMargin = ambiguityMargin;
+        this.timeBudgetNanos = Math.max(0, TimeUnit.MILLISECONDS.toNanos(timeBudgetMs));
+        this.chunkSize = Math.max(CANCEL_CHECK_INTERVAL, chunkSize);
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("biometric-match-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        log.info("Template match engine started with parallelism {}, chunk size {}, {} matcher and {} mode",
+                threads, this.chunkSize, matcher.name(), mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Identify the probe among the candidate buckets.
+     *
+     * Buckets with an LSH index are first searched among the templates colliding with
+     * the probe; the full bucket is only scanned if that yields no accepted match and
+     * app.biometric.lsh.fallback-full-scan is enabled.
+     */
+    public IdentificationResult identify(List<BiometricGallery.Snapshot> candidates, byte[] probe, int threshold) {
+        long started = System.nanoTime();
+        Search search = new Search(probe, threshold, started);
+
+        TopK top = new TopK(topK);
+        boolean unindexed = false;
+        for (BiometricGallery.Snapshot gallery : candidates) {
+            BitSet slots = gallery.lshCandidates(probe);
+            if (slots == null) {
+                unindexed = true;
+                continue;
+            }
+            top.addAll(scoreSlots(search, gallery, slots));
+        }
+
+        if (!search.isAccepted(top) && (unindexed || lshFallbackFullScan) && !search.isExpired()) {
+            if (lshFallbackFullScan) {
+                // The full scan visits the LSH candidates again; start over so they are not counted twice
+                top = new TopK(topK);
+            }
+            for (BiometricGallery.Snapshot gallery : candidates) {
+                if (gallery.hasLshIndex() && !lshFallbackFullScan) {
+                    continue;
+                }
+                top.addAll(scanBucket(search, gallery));
+                if (search.isStopped()) {
+                    break;
+                }
+            }
+        }
+
+        return search.result(top, System.nanoTime() - started);
+    }
+
+    /**
+     * Identify several probes of the same template length in one pass over the gallery.
+     *
+     * Each gallery template is scored against every pending probe while it is in cache,
+     * so a batch of n probes reads the bucket once instead of n times. Results are
+     * returned in probe order and are the same as calling {@link #identify} per probe.
+     */
+    public List<IdentificationResult> identifyBatch(List<BiometricGallery.Snapshot> candidates,
+                                                    List<byte[]> probes, int threshold) {
+        long started = System.nanoTime();
+        int n = probes.size();
+        Search[] searches = new Search[n];
+        TopK[] tops = new TopK[n];
+        for (int i = 0; i < n; i++) {
+            searches[i] = new Search(probes.get(i), threshold, started);
+            tops[i] = new TopK(topK);
+        }
+
+        boolean unindexed = false;
+        for (BiometricGallery.Snapshot gallery : candidates) {
+            if (!gallery.hasLshIndex()) {
+                unindexed = true;
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                tops[i].addAll(scoreSlots(searches[i], gallery, gallery.lshCandidates(probes.get(i))));
+            }
+        }
+
+        if (unindexed || lshFallbackFullScan) {
+            List<Integer> pending = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                if (!searches[i].isAccepted(tops[i]) && !searches[i].isExpired()) {
+                    pending.add(i);
+                }
+            }
+
+            if (!pending.isEmpty()) {
+                Search[] batch = new Search[pending.size()];
+                for (int j = 0; j < batch.length; j++) {
+                    int i = pending.get(j);
+                    batch[j] = searches[i];
+                    if (lshFallbackFullScan) {
+                        // The full scan visits the LSH candidates again; start over so they are not counted twice
+                        tops[i] = new TopK(topK);
+                    }
+                }
+
+                for (BiometricGallery.Snapshot gallery : candidates) {
+                    if (gallery.hasLshIndex() && !lshFallbackFullScan) {
+                        continue;
+                    }
+                    TopK[] found = scanBucket(batch, gallery);
+                    for (int j = 0; j < batch.length; j++) {
+                        tops[pending.get(j)].addAll(found[j]);
+                    }
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - started;
+        List<IdentificationResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(searches[i].result(tops[i], elapsed));
+        }
+        return results;
+    }
+
+    /**
+     * Score the given slots (LSH candidates) on the calling thread
+     */
+    private TopK scoreSlots(Search search, BiometricGallery.Snapshot gallery, BitSet slots) {
+        TopK top = new TopK(topK);
+        int scored = 0;
+
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            if (scored % CANCEL_CHECK_INTERVAL == 0 && search.isStopped()) {
+                break;
+            }
+            if (!gallery.isActive(slot)) {
+                continue;
+            }
+
+            int score = gallery.score(matcher, search.probe, slot);
+            scored++;
+            if (offer(search, top, gallery, slot, score)) {
+                break;
+            }
+        }
+
+        search.comparisons.add(scored);
+        return top;
+    }
+
+    /**
+     * Score a whole bucket, in parallel when it spans more than one chunk
+     */
+    private TopK scanBucket(Search search, BiometricGallery.Snapshot gallery) {
+        if (gallery.count() <= chunkSize || pool.getParallelism() == 1) {
+            return scanRange(search, gallery, 0, gallery.count());
+        }
+        return pool.invoke(new SearchTask(search, gallery, 0, gallery.count()));
+    }
+
+    /**
+     * Score slots [from, to) of a bucket
+     */
+    private TopK scanRange(Search search, BiometricGallery.Snapshot gallery, int from, int to) {
+        TopK top = new TopK(topK);
+        int scored = 0;
+
+        for (int slot = from; slot < to; slot++) {
+            if ((slot - from) % CANCEL_CHECK_INTERVAL == 0 && search.isStopped()) {
+                break;
+            }
+            if (!gallery.isActive(slot)) {
+                continue;
+            }
+
+            int score = gallery.score(matcher, search.probe, slot);
+            scored++;
+            if (offer(search, top, gallery, slot, score)) {
+                break;
+            }
+        }
+
+        search.comparisons.add(scored);
+        return top;
+    }
+
+    /**
+     * Score a whole bucket for several probes at once, in parallel when it spans more than one chunk
+     */
+    private TopK[] scanBucket(Search[] searches, BiometricGallery.Snapshot gallery) {
+        if (gallery.count() <= chunkSize || pool.getParallelism() == 1) {
+            return scanRange(searches, gallery, 0, gallery.count());
+        }
+        return pool.invoke(new BatchTask(searches, gallery, 0, gallery.count()));
+    }
+
+    /**
+     * Score slots [from, to) of a bucket against every probe that is still searching
+     */
+    private TopK[] scanRange(Search[] searches, BiometricGallery.Snapshot gallery, int from, int to) {
+        int n = searches.length;
+        TopK[] tops = new TopK[n];
+        int[] scored = new int[n];
+        boolean[] stopped = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            tops[i] = new TopK(topK);
+        }
+
+        int remaining = n;
+
+        for (int slot = from; slot < to && remaining > 0; slot++) {
+            if ((slot - from) % CANCEL_CHECK_INTERVAL == 0) {
+                for (int i = 0; i < n; i++) {
+                    if (!stopped[i] && searches[i].isStopped()) {
+                        stopped[i] = true;
+                        remaining--;
+                    }
+                }
+            }
+            if (!gallery.isActive(slot)) {
+                continue;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (stopped[i]) {
+                    continue;
+                }
+                int score = gallery.score(matcher, searches[i].probe, slot);
+                scored[i]++;
+                if (offer(searches[i], tops[i], gallery, slot, score)) {
+                    stopped[i] = true;
+                    remaining--;
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            searches[i].comparisons.add(scored[i]);
+        }
+        return tops;
+    }
+
+    /**
+     * Record a score; returns true when the search can stop (first-match mode accepted it)
+     */
+    private boolean offer(Search search, TopK top, BiometricGallery.Snapshot gallery, int slot, int score) {
+        if (!top.accepts(score)) {
+            return false;
+        }
+        top.add(new Match(slot, gallery.biometricId(slot), gallery.userId(slot), score));
+
+        if (!bestMatch && score >= search.threshold) {
+            search.accepted = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Per-request search state shared by all chunks
+     */
+    private final class Search {
+
+        private final byte[] probe;
+        private final int threshold;
+        private final long started;
+        private final LongAdder comparisons = new LongAdder();
+        private volatile boolean accepted;
+        private volatile boolean timedOut;
+
+        Search(byte[] probe, int threshold, long started) {
+            this.probe = probe;
+            this.threshold = threshold;
+            this.started = started;
+        }
+
+        boolean isStopped() {
+            return accepted || isExpired();
+        }
+
+        boolean isExpired() {
+            // A budget of 0 means unlimited
+            if (!timedOut && timeBudgetNanos > 0 && System.nanoTime() - started >= timeBudgetNanos) {
+                timedOut = true;
+            }
+            return timedOut;
+        }
+
+        boolean isAccepted(TopK top) {
+            Match best = top.best();
+            return best != null && best.getScore() >= threshold;
+        }
+
+        IdentificationResult result(TopK top, long elapsedNanos) {
+            Match best = top.best();
+            long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+
+            if (best == null || best.getScore() < threshold) {
+                return new IdentificationResult(IdentificationResult.Status.NO_MATCH, null, null,
+                        comparisons.sum(), timedOut, micros);
+            }
+
+            Match runnerUp = top.bestOfOtherUser(best.getUserId());
+            if (bestMatch && runnerUp != null && runnerUp.getScore() >= threshold
+                    && best.getScore() - runnerUp.getScore() <= ambiguityMargin) {
+                return new IdentificationResult(IdentificationResult.Status.AMBIGUOUS, best, runnerUp,
+                        comparisons.sum(), timedOut, micros);
+            }
+
+            return new IdentificationResult(IdentificationResult.Status.MATCH, best, runnerUp,
+                    comparisons.sum(), timedOut, micros);
+        }
+    }
+
+    /**
+     * Splits a slot range in halves until it fits in one chunk
+     */
+    private final class SearchTask extends RecursiveTask<TopK> {
+
+        private final Search search;
+        private final BiometricGallery.Snapshot gallery;
+        private final int from;
+        private final int to;
+
+        SearchTask(Search search, BiometricGallery.Snapshot gallery, int from, int to) {
+            this.search = search;
+            this.gallery = gallery;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (search.isStopped()) {
+                return new TopK(topK);
+            }
+            if (to - from <= chunkSize) {
+                return scanRange(search, gallery, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            SearchTask right = new SearchTask(search, gallery, mid, to);
+            right.fork();
+            TopK top = new SearchTask(search, gallery, from, mid).compute();
+            top.addAll(right.join());
+            return top;
+        }
+    }
+
+    /**
+     * Batched variant of {@link SearchTask}: one chunk scores all probes
+     */
+    private final class BatchTask extends RecursiveTask<TopK[]> {
+
+        private final Search[] searches;
+        private final BiometricGallery.Snapshot gallery;
+        private final int from;
+        private final int to;
+
+        BatchTask(Search[] searches, BiometricGallery.Snapshot gallery, int from, int to) {
+            this.searches = searches;
+            this.gallery = gallery;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (to - from <= chunkSize) {
+                return scanRange(searches, gallery, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            BatchTask right = new BatchTask(searches, gallery, mid, to);
+            right.fork();
+            TopK[] tops = new BatchTask(searches, gallery, from, mid).compute();
+            TopK[] other = right.join();
+            for (int i = 0; i < tops.length; i++) {
+                tops[i].addAll(other[i]);
+            }
+            return tops;
+        }
+    }
+
+    /**
+     * Bounded min-heap of the k highest scoring users, holding each user's best match.
+     *
+     * Keeping one entry per user means a user's other templates can never push
+     * another user's best score out, so the ambiguity check always sees the
+     * runner-up as long as k is at least 2.
+     */
+    static final class TopK {
+
+        private final int capacity;
+        private final PriorityQueue<Match> heap;
+        private final Map<Long, Match> byUser;
+
+        TopK(int capacity) {
+            this.capacity = capacity;
+            this.heap = new PriorityQueue<>(capacity + 1, (a, b) -> Integer.compare(a.getScore(), b.getScore()));
+            this.byUser = new HashMap<>(capacity * 2);
+        }
+
+        boolean accepts(int score) {
+            return heap.size() < capacity || score > heap.peek().getScore();
+        }
+
+        void add(Match match) {
+            Match current = byUser.get(match.getUserId());
+            if (current != null) {
+                if (current.getScore() >= match.getScore()) {
+                    return;
+                }
+                heap.remove(current);
+            }
+            byUser.put(match.getUserId(), match);
+            heap.add(match);
+            if (heap.size() > capacity) {
+                byUser.remove(heap.poll().getUserId());
+            }
+        }
+
+        void addAll(TopK other) {
+            for (Match match : other.heap) {
+                if (accepts(match.getScore())) {
+                    add(match);
+                }
+            }
+        }
+
+        Match best() {
+            Match best = null;
+            for (Match match : heap) {
+                if (best == null || match.getScore() > best.getScore()) {
+                    best = match;
+                }
+            }
+            return best;
+        }
+
+        Match bestOfOtherUser(long userId) {
+            Match best = null;
+            for (Match match : heap) {
+                if (match.getUserId() != userId && (best == null || match.getScore() > best.getScore())) {
+                    best = match;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Scored gallery entry
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Match {
+        private final int slot;
+        private final long biometricId;
+        private final long userId;
+        private final int score;
+    }
+}
@@ -0,0 +1,33 @@
+package com.cognizant.smartpay.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scoring kernel used by the 1:N match engine.
+ *
+ * Implementations compare a captured template with a stored template that lives
+ * inside the gallery's packed data at [offset, offset + length) and return a
+ * 0-100 score on the scale of app.biometric.match-threshold. Templates of a
+ * different length never match.
+ *
+ * Stored templates are either on the heap or in a memory-mapped gallery snapshot;
+ * both overloads must return the same score for the same bytes.
+ */
+public interface TemplateMatcher {
+
+    /**
+     * Score a captured template against a stored template
+     */
+    int score(byte[] template, byte[] data, int offset, int length);
+
+    /**
+     * Score a captured template against a stored template in a (mapped) buffer,
+     * using absolute reads only so the buffer can be shared between threads
+     */
+    int score(byte[] template, ByteBuffer data, int offset, int length);
+
+    /**
+     * Short name used in logs and configuration
+     */
+    String name();
+}
@@ -0,0 +1,79 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.cognizant.smartpay.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Per-user WebAuthn credential IDs for scoped allowCredentials lookups.
+ *
+ * An identifier (email or phone) is resolved to a user ID and then to that
+ * user's active credential IDs; both steps use ID-only queries and are cached,
+ * so a lookup costs no more than a couple of map reads once warm. The user's
+ * entry is invalidated when one of their credentials is enrolled or deactivated.
+ */
+@Component
+public class UserCredentialCache {
+
+    private final UserRepository userRepository;
+    private final BiometricRepository biometricRepository;
+    private final Cache<String, Long> userIds;
+    private final Cache<Long, List<String>> credentialIds;
+
+    public UserCredentialCache(UserRepository userRepository,
+                               BiometricRepository biometricRepository,
+                               @Value("${app.webauthn.user-credential-cache.max-size:100000}") long maxSize,
+                               @Value("${app.webauthn.user-credential-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.biometricRepository = biometricRepository;
+        this.userIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        this.credentialIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Active credential IDs of the user with the given email or phone; empty for unknown users
+     */
+    public List<String> credentialIds(String identifier) {
+        if (identifier == null || identifier.isBlank()) {
+            return Collections.emptyList();
+        }
+
+        String key = identifier.trim().toLowerCase(Locale.ROOT);
+        Long userId = userIds.getIfPresent(key);
+        if (userId == null) {
+            // Unknown identifiers are not cached so a later registration is visible immediately
+            Optional<Long> found = userRepository.findUserIdByIdentifier(identifier.trim());
+            if (found.isEmpty()) {
+                return Collections.emptyList();
+            }
+            userId = found.get();
+            userIds.put(key, userId);
+        }
+
+        return credentialIds.get(userId, id -> List.copyOf(biometricRepository.findActiveCredentialIdsByUserId(id)));
+    }
+
+    /**
+     * Drop the cached credentials of a user after enrollment or deactivation
+     */
+    public void invalidate(Long userId) {
+        if (userId != null) {
+            credentialIds.invalidate(userId);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind recorder for biometric verification statistics.
+ *
+ * Successful authentications only add to a pending delta per biometric in a
+ * ConcurrentHashMap (lock-striped per bin, so taps on different biometrics never
+ * contend); the deltas are drained and written with one JDBC batch update every
+ * flush interval, or earlier once enough events are pending. Deltas that fail to
+ * flush are merged back for the next attempt, and everything pending is flushed
+ * on shutdown.
+ *
+ * last_verified_at only ever moves forward, so flushes from several instances
+ * can interleave safely.
+ */
+@Component
+@Slf4j
+public class VerificationStatsRecorder {
+
+    private static final String UPDATE_SQL = """
+            UPDATE biometrics
+            SET verification_count = verification_count + ?,
+                last_verified_at = GREATEST(COALESCE(last_verified_at, ?), ?)
+            WHERE biometric_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, Delta> pending = new ConcurrentHashMap<>();
+    private final LongAdder pendingEvents = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "verification-stats-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.biometric.stats.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    public VerificationStatsRecorder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Record a successful verification; does not touch the database
+     */
+    public void record(Long biometricId) {
+        long now = System.currentTimeMillis();
+        pending.merge(biometricId, new Delta(1, now), Delta::plus);
+        pendingEvents.increment();
+
+        if (pendingEvents.sum() >= flushBatchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Write pending deltas with one batch update
+     */
+    @Scheduled(fixedDelayString = "${app.biometric.stats.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        List<Long> biometricIds = new ArrayList<>();
+        List<Delta> deltas = new ArrayList<>();
+
+        for (Long biometricId : pending.keySet()) {
+            // Removing under the bin lock: a concurrent record either lands in this delta or starts a new one
+            Delta delta = pending.remove(biometricId);
+            if (delta != null) {
+                biometricIds.add(biometricId);
+                deltas.add(delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>(deltas.size());
+        long total = 0;
+        for (int i = 0; i < deltas.size(); i++) {
+            Delta delta = deltas.get(i);
+            Timestamp verifiedAt = toTimestamp(delta.lastVerifiedAt);
+            batch.add(new Object[]{delta.count, verifiedAt, verifiedAt, biometricIds.get(i)});
+            total += delta.count;
+        }
+        pendingEvents.add(-total);
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+            log.debug("Flushed {} verifications for {} biometrics", total, batch.size());
+        } catch (RuntimeException e) {
+            for (int i = 0; i < deltas.size(); i++) {
+                pending.merge(biometricIds.get(i), deltas.get(i), Delta::plus);
+            }
+            pendingEvents.add(total);
+            log.warn("Could not flush verification stats for {} biometrics: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private static Timestamp toTimestamp(long epochMillis) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Verifications of one biometric not written yet
+     */
+    private static final class Delta {
+
+        private final long count;
+        private final long lastVerifiedAt;
+
+        Delta(long count, long lastVerifiedAt) {
+            this.count = count;
+            this.lastVerifiedAt = lastVerifiedAt;
+        }
+
+        Delta plus(Delta other) {
+            return new Delta(count + other.count, Math.max(lastVerifiedAt, other.lastVerifiedAt));
+        }
+    }
+}
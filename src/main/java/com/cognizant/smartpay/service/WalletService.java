@@ -48,13 +48,16 @@ public class WalletService {
 
         log.info("Adding ₹{} to wallet for userId: {}", amount, userId);
 
-        Wallet wallet = getOrCreateWallet(userId);
+        getOrCreateWallet(userId);
 
-        BigDecimal balanceBefore = wallet.getBalance() == null ? BigDecimal.ZERO : wallet.getBalance();
-        BigDecimal balanceAfter = balanceBefore.add(amount);
+        // Credit in place (a checkout may be debiting the same row), then read back the result
+        if (walletRepository.credit(userId, amount) != 1) {
+            throw new IllegalStateException("Wallet of user " + userId + " could not be credited");
+        }
+        Wallet savedWallet = walletRepository.findByUserId(userId).orElseThrow();
 
-        wallet.setBalance(balanceAfter);
-        Wallet savedWallet = walletRepository.save(wallet);
+        BigDecimal balanceAfter = savedWallet.getBalance();
+        BigDecimal balanceBefore = balanceAfter.subtract(amount);
 
         WalletTransaction transaction = new WalletTransaction();
         transaction.setWallet(savedWallet);
@@ -0,0 +1,149 @@
+package com.cognizant.smartpay.service;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.yubico.webauthn.data.ByteArray;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * A WebAuthn credential public key as the COSE_Key that webauthn-server-core
+ * verifies assertions with.
+ *
+ * Stored keys are either a COSE_Key from the attested credential data, which is
+ * used as is, or SubjectPublicKeyInfo DER (what the enrollment page sends from
+ * getPublicKey()), which is decoded with the JCA and written out as a COSE_Key.
+ * Decoding the COSE_Key is left to the library. Conversion is done once per
+ * credential and the result is cached with it (see {@link CredentialCache}).
+ */
+@Getter
+public final class WebAuthnPublicKey {
+
+    // COSE key parameters and algorithms (RFC 9053)
+    private static final int KTY = 1;
+    private static final int ALG = 3;
+    private static final int CRV_OR_N = -1;
+    private static final int X_OR_E = -2;
+    private static final int Y = -3;
+
+    private static final int KTY_OKP = 1;
+    private static final int KTY_EC2 = 2;
+    private static final int KTY_RSA = 3;
+
+    private static final int ALG_RS256 = -257;
+    private static final int ALG_EDDSA = -8;
+    private static final int CRV_ED25519 = 6;
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    private static final CBORFactory CBOR = new CBORFactory();
+
+    private final ByteArray cose;
+
+    private WebAuthnPublicKey(ByteArray cose) {
+        this.cose = cose;
+    }
+
+    /**
+     * Read a stored credential public key (SubjectPublicKeyInfo DER or COSE_Key)
+     */
+    public static WebAuthnPublicKey parse(byte[] encoded) throws GeneralSecurityException {
+        if (encoded == null || encoded.length == 0) {
+            throw new InvalidKeyException("Credential has no public key");
+        }
+        if ((encoded[0] & 0xe0) == 0xa0) {
+            return new WebAuthnPublicKey(new ByteArray(encoded));
+        }
+        if (encoded[0] == 0x30) {
+            return new WebAuthnPublicKey(new ByteArray(toCose(fromSubjectPublicKeyInfo(encoded))));
+        }
+        throw new InvalidKeyException("Unsupported public key encoding");
+    }
+
+    private static PublicKey fromSubjectPublicKeyInfo(byte[] der) throws GeneralSecurityException {
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(der);
+        for (String keyType : new String[] {"EC", "RSA", "Ed25519"}) {
+            try {
+                return KeyFactory.getInstance(keyType).generatePublic(spec);
+            } catch (InvalidKeySpecException e) {
+                // Try the next key type
+            }
+        }
+        throw new InvalidKeyException("Unsupported SubjectPublicKeyInfo key type");
+    }
+
+    private static byte[] toCose(PublicKey key) throws InvalidKeyException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CBORGenerator cbor = CBOR.createGenerator(out)) {
+            if (key instanceof ECPublicKey ec) {
+                int size = (ec.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+                int[] curveAndAlgorithm = switch (size) {
+                    case 32 -> new int[] {1, -7};
+                    case 48 -> new int[] {2, -35};
+                    case 66 -> new int[] {3, -36};
+                    default -> throw new InvalidKeyException("Unsupported EC curve");
+                };
+                cbor.writeStartObject(null, 5);
+                writeInt(cbor, KTY, KTY_EC2);
+                writeInt(cbor, ALG, curveAndAlgorithm[1]);
+                writeInt(cbor, CRV_OR_N, curveAndAlgorithm[0]);
+                writeBytes(cbor, X_OR_E, unsigned(ec.getW().getAffineX(), size));
+                writeBytes(cbor, Y, unsigned(ec.getW().getAffineY(), size));
+            } else if (key instanceof RSAPublicKey rsa) {
+                cbor.writeStartObject(null, 4);
+                writeInt(cbor, KTY, KTY_RSA);
+                writeInt(cbor, ALG, ALG_RS256);
+                writeBytes(cbor, CRV_OR_N, unsigned(rsa.getModulus(), 0));
+                writeBytes(cbor, X_OR_E, unsigned(rsa.getPublicExponent(), 0));
+            } else if (key instanceof EdECPublicKey) {
+                // The raw key is the tail of the SubjectPublicKeyInfo
+                byte[] der = key.getEncoded();
+                cbor.writeStartObject(null, 4);
+                writeInt(cbor, KTY, KTY_OKP);
+                writeInt(cbor, ALG, ALG_EDDSA);
+                writeInt(cbor, CRV_OR_N, CRV_ED25519);
+                writeBytes(cbor, X_OR_E, Arrays.copyOfRange(der, der.length - ED25519_KEY_LENGTH, der.length));
+            } else {
+                throw new InvalidKeyException("Unsupported public key type " + key.getAlgorithm());
+            }
+            cbor.writeEndObject();
+        } catch (IOException e) {
+            throw new InvalidKeyException("Could not encode COSE key", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeInt(CBORGenerator cbor, int label, int value) throws IOException {
+        cbor.writeFieldId(label);
+        cbor.writeNumber(value);
+    }
+
+    private static void writeBytes(CBORGenerator cbor, int label, byte[] value) throws IOException {
+        cbor.writeFieldId(label);
+        cbor.writeBinary(value);
+    }
+
+    /**
+     * Big-endian magnitude, left-padded to the given length (0 for no padding)
+     */
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        int start = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int size = bytes.length - start;
+        byte[] result = new byte[Math.max(length, size)];
+        System.arraycopy(bytes, start, result, result.length - size, size);
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.exception.AuthenticationFailedException;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.AssertionResult;
+import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.FinishAssertionOptions;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
+import com.yubico.webauthn.data.CollectedClientData;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+import com.yubico.webauthn.data.exception.Base64UrlException;
+import com.yubico.webauthn.exception.AssertionFailedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Verifies WebAuthn assertions with webauthn-server-core.
+ *
+ * The library checks the client data (type, challenge echo, origin), the RP ID
+ * hash and flags in the authenticator data, and the signature with the
+ * credential's COSE public key. Credentials are looked up through the
+ * {@link CredentialCache}, keyed by the credential ID string the client sent, so
+ * the ID never has to be re-encoded. The user handle is the user ID.
+ *
+ * Allowed origins must be configured: without them anyone able to relay an
+ * assertion from another site could log in, so startup fails instead.
+ *
+ * Whether the challenge was issued here, and the signature counter, are checked
+ * by the caller once the assertion is verified (see {@link ChallengeStore} and
+ * {@link #signCount(byte[])}); the library's own counter check is off because the
+ * counter is advanced atomically in the database.
+ */
+@Component
+@Slf4j
+public class WebAuthnVerifier {
+
+    private static final int SIGN_COUNT_OFFSET = 33;
+
+    private final String rpId;
+    private final boolean requireUserVerification;
+    private final RelyingParty relyingParty;
+
+    @Autowired
+    public WebAuthnVerifier(CredentialCache credentialCache,
+                            @Value("${app.webauthn.rp-id}") String rpId,
+                            @Value("${app.webauthn.allowed-origins:}") List<String> allowedOrigins,
+                            @Value("${app.webauthn.require-user-verification:true}") boolean requireUserVerification) {
+        this(credentialCache::find, rpId, allowedOrigins, requireUserVerification);
+    }
+
+    WebAuthnVerifier(Function<String, Optional<CredentialCache.Credential>> credentials, String rpId,
+                     List<String> allowedOrigins, boolean requireUserVerification) {
+        Set<String> origins = new LinkedHashSet<>();
+        allowedOrigins.stream().map(String::trim).filter(origin -> !origin.isEmpty()).forEach(origins::add);
+        if (origins.isEmpty()) {
+            throw new IllegalStateException("app.webauthn.allowed-origins is not set; "
+                    + "list the origins of the pages that call navigator.credentials.get()");
+        }
+
+        this.rpId = rpId;
+        this.requireUserVerification = requireUserVerification;
+        this.relyingParty = RelyingParty.builder()
+                .identity(RelyingPartyIdentity.builder().id(rpId).name("SmartPay").build())
+                .credentialRepository(new CachedCredentials(credentials))
+                .origins(origins)
+                .validateSignatureCounter(false)
+                .build();
+        log.info("WebAuthn assertions verified for RP ID {} and origins {}", rpId, origins);
+    }
+
+    /**
+     * Verify an assertion made with the given credential of the given user; returns the client data challenge
+     *
+     * @throws AuthenticationFailedException when any check fails
+     */
+    public String verify(String credentialId, Long userId,
+                         byte[] authenticatorData, byte[] clientDataJson, byte[] signature) {
+        ByteArray challenge;
+        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> assertion;
+        try {
+            challenge = new CollectedClientData(new ByteArray(clientDataJson)).getChallenge();
+            assertion = PublicKeyCredential.<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>builder()
+                    .id(credentialKey(credentialId))
+                    .response(AuthenticatorAssertionResponse.builder()
+                            .authenticatorData(new ByteArray(authenticatorData))
+                            .clientDataJSON(new ByteArray(clientDataJson))
+                            .signature(new ByteArray(signature))
+                            .build())
+                    .clientExtensionResults(ClientAssertionExtensionOutputs.builder().build())
+                    .build();
+        } catch (IOException | Base64UrlException | IllegalArgumentException e) {
+            throw new AuthenticationFailedException("Malformed assertion: " + e.getMessage());
+        }
+
+        // The challenge is checked against the issued ones by the caller; here it only has to be echoed
+        AssertionRequest request = AssertionRequest.builder()
+                .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
+                        .challenge(challenge)
+                        .rpId(rpId)
+                        .userVerification(requireUserVerification
+                                ? UserVerificationRequirement.REQUIRED
+                                : UserVerificationRequirement.PREFERRED)
+                        .build())
+                .userHandle(userHandle(userId))
+                .build();
+
+        AssertionResult result;
+        try {
+            result = relyingParty.finishAssertion(FinishAssertionOptions.builder()
+                    .request(request)
+                    .response(assertion)
+                    .build());
+        } catch (AssertionFailedException | IllegalArgumentException e) {
+            throw new AuthenticationFailedException("Assertion rejected: " + e.getMessage());
+        }
+        if (!result.isSuccess()) {
+            throw new AuthenticationFailedException("Signature verification failed");
+        }
+        return challenge.getBase64Url();
+    }
+
+    /**
+     * Signature counter of verified authenticator data (0 when the authenticator has none)
+     */
+    public static long signCount(byte[] authenticatorData) {
+        int at = SIGN_COUNT_OFFSET;
+        return ((authenticatorData[at] & 0xffL) << 24)
+                | ((authenticatorData[at + 1] & 0xffL) << 16)
+                | ((authenticatorData[at + 2] & 0xffL) << 8)
+                | (authenticatorData[at + 3] & 0xffL);
+    }
+
+    private static ByteArray credentialKey(String credentialId) {
+        return new ByteArray(credentialId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteArray userHandle(Long userId) {
+        return new ByteArray(String.valueOf(userId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The library's view of the credential cache; only assertion lookups are needed
+     */
+    private static final class CachedCredentials implements CredentialRepository {
+
+        private final Function<String, Optional<CredentialCache.Credential>> credentials;
+
+        CachedCredentials(Function<String, Optional<CredentialCache.Credential>> credentials) {
+            this.credentials = credentials;
+        }
+
+        @Override
+        public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+            return credentials.apply(new String(credentialId.getBytes(), StandardCharsets.UTF_8))
+                    .filter(credential -> credential.getPublicKey() != null)
+                    .filter(credential -> userHandle(credential.getUserId()).equals(userHandle))
+                    .map(credential -> RegisteredCredential.builder()
+                            .credentialId(credentialId)
+                            .userHandle(userHandle)
+                            .publicKeyCose(credential.getPublicKey().getCose())
+                            .signatureCount(credential.getSignCount())
+                            .build());
+        }
+
+        @Override
+        public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+            return Set.of();
+        }
+
+        @Override
+        public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+            return Set.of();
+        }
+
+        @Override
+        public Optional<ByteArray> getUserHandleForUsername(String username) {
+            return Optional.of(new ByteArray(username.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+            return Optional.of(new String(userHandle.getBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
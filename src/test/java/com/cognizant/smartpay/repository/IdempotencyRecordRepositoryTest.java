@@ -0,0 +1,95 @@
+package com.cognizant.smartpay.repository;
+
+import com.cognizant.smartpay.entity.IdempotencyRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The claim lifecycle of an Idempotency-Key: claim, take over, complete, release
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:idempotency;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class IdempotencyRecordRepositoryTest {
+
+    private static final long USER_ID = 7L;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void claimTakeOverCompleteRelease() {
+        LocalDateTime claimedAt = LocalDateTime.now().minusMinutes(5).truncatedTo(ChronoUnit.SECONDS);
+        claim("key-1", claimedAt);
+
+        // A second claim of the same key loses on the unique constraint
+        assertThatThrownBy(() -> claim("key-1", LocalDateTime.now()))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        entityManager.clear();
+
+        IdempotencyRecord record = repository.findByUserIdAndIdempotencyKey(USER_ID, "key-1").orElseThrow();
+        assertThat(record.getStatus()).isEqualTo(IdempotencyRecord.Status.IN_PROGRESS);
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        // Still within its lease
+        assertThat(repository.takeOver(USER_ID, "key-1", record.getLockedAt(), now.minusMinutes(10), now)).isZero();
+        // Lease expired: exactly one taker wins
+        assertThat(repository.takeOver(USER_ID, "key-1", record.getLockedAt(), now.minusMinutes(1), now)).isEqualTo(1);
+        assertThat(repository.takeOver(USER_ID, "key-1", record.getLockedAt(), now.minusMinutes(1), now)).isZero();
+
+        assertThat(repository.complete(USER_ID, "key-1", 200, "{\"status\":\"success\"}", now)).isEqualTo(1);
+        // Completed keys are neither completed again nor released
+        assertThat(repository.complete(USER_ID, "key-1", 500, "{}", now)).isZero();
+        assertThat(repository.release(USER_ID, "key-1")).isZero();
+
+        IdempotencyRecord completed = repository.findByUserIdAndIdempotencyKey(USER_ID, "key-1").orElseThrow();
+        assertThat(completed.getStatus()).isEqualTo(IdempotencyRecord.Status.COMPLETED);
+        assertThat(completed.getHttpStatus()).isEqualTo(200);
+        assertThat(completed.getResponseBody()).isEqualTo("{\"status\":\"success\"}");
+        assertThat(completed.getLockedAt()).isEqualTo(now);
+    }
+
+    @Test
+    void releasedClaimCanBeClaimedAgain() {
+        claim("key-2", LocalDateTime.now());
+
+        assertThat(repository.release(USER_ID, "key-2")).isEqualTo(1);
+        assertThat(repository.findByUserIdAndIdempotencyKey(USER_ID, "key-2")).isEmpty();
+
+        claim("key-2", LocalDateTime.now());
+        assertThat(repository.findByUserIdAndIdempotencyKey(USER_ID, "key-2")).isPresent();
+    }
+
+    @Test
+    void purgesOldRecords() {
+        claim("key-3", LocalDateTime.now());
+
+        assertThat(repository.deleteCreatedBefore(LocalDateTime.now().minusHours(1))).isZero();
+        assertThat(repository.deleteCreatedBefore(LocalDateTime.now().plusMinutes(1))).isEqualTo(1);
+    }
+
+    private void claim(String key, LocalDateTime lockedAt) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setUserId(USER_ID);
+        record.setIdempotencyKey(key);
+        record.setStatus(IdempotencyRecord.Status.IN_PROGRESS);
+        record.setLockedAt(lockedAt);
+        repository.saveAndFlush(record);
+    }
+}
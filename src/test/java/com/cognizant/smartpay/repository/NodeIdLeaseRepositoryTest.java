@@ -0,0 +1,66 @@
+package com.cognizant.smartpay.repository;
+
+import com.cognizant.smartpay.entity.NodeIdLeaseRecord;
+import com.cognizant.smartpay.service.NodeIdLease;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Node ID leases: instances never share a node ID, and stale leases are taken over
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:node-leases;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class NodeIdLeaseRepositoryTest {
+
+    private static final long TTL_MS = 60_000;
+
+    @Autowired
+    private NodeIdLeaseRepository repository;
+
+    @Test
+    void instancesLeaseDistinctNodeIds() {
+        NodeIdLease first = new NodeIdLease(repository, TTL_MS);
+        NodeIdLease second = new NodeIdLease(repository, TTL_MS);
+
+        int firstId = first.acquire();
+        int secondId = second.acquire();
+        assertThat(firstId).isNotEqualTo(secondId);
+        assertThat(first.nodeId()).isEqualTo(firstId);
+        assertThat(repository.count()).isEqualTo(2);
+
+        first.release();
+        assertThat(repository.existsById(firstId)).isFalse();
+        assertThatThrownBy(first::nodeId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void staleLeaseIsTakenOverAndItsHolderMovesOn() {
+        NodeIdLease stalled = new NodeIdLease(repository, TTL_MS);
+        int nodeId = stalled.acquire();
+
+        LocalDateTime now = LocalDateTime.now();
+        // Still renewed recently
+        assertThat(repository.takeOver(nodeId, "other", now.minusSeconds(60), now)).isZero();
+
+        NodeIdLeaseRecord record = repository.findById(nodeId).orElseThrow();
+        record.setRenewedAt(now.minusMinutes(5));
+        repository.saveAndFlush(record);
+        assertThat(repository.takeOver(nodeId, "other", now.minusSeconds(60), now)).isEqualTo(1);
+
+        // The stalled holder finds its row taken and leases another node ID
+        stalled.renew();
+        assertThat(stalled.nodeId()).isNotEqualTo(nodeId);
+        assertThat(repository.findById(nodeId).orElseThrow().getHolder()).isEqualTo("other");
+    }
+}
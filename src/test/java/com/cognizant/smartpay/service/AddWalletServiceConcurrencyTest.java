@@ -0,0 +1,143 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.entity.Wallet;
+import com.cognizant.smartpay.repository.WalletRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many threads debiting one wallet at once: the guarded UPDATE must let exactly
+ * floor(balance / amount) of them through and never take the balance below zero.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:wallet-concurrency;MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(AddWalletService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AddWalletServiceConcurrencyTest {
+
+    private static final long USER_ID = 42L;
+    private static final int THREADS = 16;
+    private static final int DEBITS = 200;
+
+    @Autowired
+    private AddWalletService addWalletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @AfterEach
+    void cleanUp() {
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        BigDecimal initialBalance = new BigDecimal("1000.00");
+        BigDecimal amount = new BigDecimal("7.00");
+        addWalletService.createWallet(USER_ID, initialBalance);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BigDecimal>> debits = new ArrayList<>(DEBITS);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try {
+            for (int i = 0; i < DEBITS; i++) {
+                debits.add(executor.submit(() -> {
+                    start.await();
+                    threads.add(Thread.currentThread().getName());
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        return addWalletService.deductMoney(USER_ID, amount).getBalance();
+                    } catch (RuntimeException e) {
+                        assertThat(e).hasMessage("Insufficient balance");
+                        return null;
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }));
+            }
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<BigDecimal> debit : debits) {
+                BigDecimal balanceAfter = debit.get(30, TimeUnit.SECONDS);
+                if (balanceAfter != null) {
+                    assertThat(balanceAfter).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+                    succeeded++;
+                }
+            }
+
+            // The debits really raced each other on the one wallet row
+            assertThat(threads).hasSize(THREADS);
+            assertThat(maxInFlight.get()).isGreaterThan(1);
+
+            int expected = initialBalance.divideToIntegralValue(amount).intValueExact();
+            assertThat(succeeded).isEqualTo(expected);
+
+            Wallet wallet = walletRepository.findByUserId(USER_ID).orElseThrow();
+            assertThat(wallet.getBalance())
+                    .isGreaterThanOrEqualTo(BigDecimal.ZERO)
+                    .isEqualByComparingTo(initialBalance.subtract(amount.multiply(BigDecimal.valueOf(expected))));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentCreditsAndDebitsKeepEveryUpdate() throws Exception {
+        BigDecimal amount = new BigDecimal("5.00");
+        addWalletService.createWallet(USER_ID, new BigDecimal("500.00"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> updates = new ArrayList<>();
+        try {
+            // The opening balance covers every debit, so all of them succeed whatever the interleaving
+            for (int i = 0; i < 100; i++) {
+                updates.add(executor.submit(() -> {
+                    start.await();
+                    return addWalletService.addMoney(USER_ID, amount);
+                }));
+                updates.add(executor.submit(() -> {
+                    start.await();
+                    return addWalletService.deductMoney(USER_ID, amount);
+                }));
+            }
+            start.countDown();
+            for (Future<?> update : updates) {
+                update.get(30, TimeUnit.SECONDS);
+            }
+
+            assertThat(walletRepository.findByUserId(USER_ID).orElseThrow().getBalance())
+                    .isEqualByComparingTo("500.00");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
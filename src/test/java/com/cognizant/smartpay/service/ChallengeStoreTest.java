@@ -0,0 +1,43 @@
+package com.cognizant.smartpay.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChallengeStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void challengeIsSingleUse() {
+        ChallengeStore store = new ChallengeStore(meterRegistry, 60_000, 100, 10);
+
+        String challenge = store.issue();
+        assertThat(store.consume(challenge)).isTrue();
+        assertThat(store.consume(challenge)).isFalse();
+        assertThat(store.consume("never-issued")).isFalse();
+        assertThat(store.outstanding()).isZero();
+    }
+
+    @Test
+    void floodEvictsOldestInsteadOfRefusing() {
+        ChallengeStore store = new ChallengeStore(meterRegistry, 60_000, 100, 10);
+
+        List<String> flood = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            flood.add(store.issue());
+        }
+        assertThat(store.outstanding()).isEqualTo(10);
+
+        // A login after the flood still gets a usable challenge
+        String login = store.issue();
+        assertThat(store.outstanding()).isEqualTo(10);
+        assertThat(store.consume(login)).isTrue();
+        assertThat(store.consume(flood.get(0))).isFalse();
+        assertThat(meterRegistry.get("smartpay.webauthn.challenges.evicted").counter().count()).isEqualTo(991);
+    }
+}
@@ -0,0 +1,48 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CredentialFilterTest {
+
+    private final BiometricRepository biometricRepository = mock(BiometricRepository.class);
+    private CredentialFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new CredentialFilter(biometricRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "headroom", 2.0);
+        ReflectionTestUtils.setField(filter, "rebuildIntervalMs", 900_000L);
+        ReflectionTestUtils.setField(filter, "refreshOverlapMs", 60_000L);
+    }
+
+    @Test
+    void refreshPicksUpCredentialsEnrolledElsewhere() {
+        when(biometricRepository.findActiveCredentialIds()).thenReturn(List.of("local-1", "local-2"));
+        filter.init();
+        assertThat(filter.mightContain("local-1")).isTrue();
+        assertThat(filter.mightContain("remote-1")).isFalse();
+
+        // Enrolled on another instance; the overlap also re-reads one already in the filter
+        when(biometricRepository.findActiveCredentialIdsEnrolledSince(any(LocalDateTime.class)))
+                .thenReturn(List.of("local-2", "remote-1"));
+        filter.refresh();
+
+        assertThat(filter.mightContain("remote-1")).isTrue();
+        assertThat(filter.mightContain("local-2")).isTrue();
+        CuckooFilter current = (CuckooFilter) ReflectionTestUtils.getField(filter, "filter");
+        assertThat(current.size()).isEqualTo(3);
+    }
+}
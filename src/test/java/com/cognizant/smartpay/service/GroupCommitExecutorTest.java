@@ -0,0 +1,155 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Group commit on a real DataSourceTransactionManager (savepoints included) over H2
+ */
+class GroupCommitExecutorTest {
+
+    private static final int THREADS = 16;
+
+    private final DataSource dataSource =
+            new DriverManagerDataSource("jdbc:h2:mem:group-commit;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final CountingTransactionManager transactionManager = new CountingTransactionManager(dataSource);
+
+    private GroupCommitExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS payments (id INT PRIMARY KEY)");
+        // A window long enough for every caller to join the first batch
+        executor = new GroupCommitExecutor(new TransactionTemplate(transactionManager), true, 200_000, 64, 1, 10_000);
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.stop();
+        jdbcTemplate.execute("DROP TABLE payments");
+    }
+
+    @Test
+    void concurrentUnitsShareCommits() throws Exception {
+        List<Future<Integer>> results = runConcurrently(id -> status -> {
+            jdbcTemplate.update("INSERT INTO payments (id) VALUES (?)", id);
+            return id;
+        });
+
+        for (int id = 0; id < THREADS; id++) {
+            assertThat(results.get(id).get(30, TimeUnit.SECONDS)).isEqualTo(id);
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payments", Integer.class)).isEqualTo(THREADS);
+        assertThat(transactionManager.commits.get()).isLessThan(THREADS);
+        assertThat(transactionManager.rollbacks.get()).isZero();
+    }
+
+    @Test
+    void failedUnitIsRolledBackToItsSavepoint() throws Exception {
+        List<Future<Integer>> results = runConcurrently(id -> status -> {
+            jdbcTemplate.update("INSERT INTO payments (id) VALUES (?)", id);
+            if (id == 3) {
+                throw new IllegalArgumentException("Insufficient wallet balance");
+            }
+            return id;
+        });
+
+        for (int id = 0; id < THREADS; id++) {
+            Future<Integer> result = results.get(id);
+            if (id == 3) {
+                assertThatThrownBy(() -> result.get(30, TimeUnit.SECONDS))
+                        .hasCauseInstanceOf(IllegalArgumentException.class);
+            } else {
+                assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo(id);
+            }
+        }
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM payments ORDER BY id", Integer.class))
+                .hasSize(THREADS - 1)
+                .doesNotContain(3);
+        // The batch committed as a group rather than falling back to one transaction per unit
+        assertThat(transactionManager.commits.get()).isLessThan(THREADS - 1);
+    }
+
+    @Test
+    void applicationConstructorUsesSavepointCapableTransactions() {
+        GroupCommitExecutor standalone = new GroupCommitExecutor(dataSource, true, 1000, 64, 1, 10_000);
+        standalone.start();
+        try {
+            Integer id = standalone.execute(status -> {
+                jdbcTemplate.update("INSERT INTO payments (id) VALUES (?)", 99);
+                return 99;
+            });
+            assertThat(id).isEqualTo(99);
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payments WHERE id = 99", Integer.class))
+                    .isEqualTo(1);
+        } finally {
+            standalone.stop();
+        }
+    }
+
+    private <T> List<Future<T>> runConcurrently(UnitFactory<T> units) throws InterruptedException {
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            int id = i;
+            results.add(callers.submit(() -> {
+                start.await();
+                return executor.execute(units.unit(id));
+            }));
+        }
+        start.countDown();
+        callers.shutdown();
+        assertThat(callers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface UnitFactory<T> {
+        TransactionCallback<T> unit(int id);
+    }
+
+    private static final class CountingTransactionManager extends DataSourceTransactionManager {
+
+        private final AtomicInteger commits = new AtomicInteger();
+        private final AtomicInteger rollbacks = new AtomicInteger();
+
+        CountingTransactionManager(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            commits.incrementAndGet();
+            super.doCommit(status);
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rollbacks.incrementAndGet();
+            super.doRollback(status);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+/**
+ * Checkout against H2: the wallet is debited from the balance read with the cart
+ */
+class PaymentServiceTest {
+
+    private static final long USER_ID = 1L;
+
+    private final DataSource dataSource =
+            new DriverManagerDataSource("jdbc:h2:mem:payments;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    private final JdbcTemplate jdbcTemplate = spy(new JdbcTemplate(dataSource));
+
+    private PaymentService paymentService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE cart (cart_id BIGINT PRIMARY KEY, user_id BIGINT, is_active INT)");
+        jdbcTemplate.execute("CREATE TABLE cart_items (cart_id BIGINT, product_id BIGINT, quantity INT, "
+                + "subtotal DECIMAL(10,2))");
+        jdbcTemplate.execute("CREATE TABLE products (product_id BIGINT PRIMARY KEY, selling_price DECIMAL(10,2), "
+                + "name VARCHAR(100), brand VARCHAR(100), stock_quantity INT)");
+        jdbcTemplate.execute("CREATE TABLE wallet (user_id BIGINT PRIMARY KEY, balance DECIMAL(10,2))");
+        jdbcTemplate.execute("CREATE TABLE transactions (transaction_id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "transaction_reference VARCHAR(50), user_id BIGINT, cart_id BIGINT, total_amount DECIMAL(10,2), "
+                + "final_amount DECIMAL(10,2), payment_method VARCHAR(20), payment_status VARCHAR(20), "
+                + "wallet_balance_before DECIMAL(10,2), wallet_balance_after DECIMAL(10,2), items_count INT, "
+                + "transaction_date TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE transaction_items (transaction_id BIGINT, product_id BIGINT, "
+                + "product_name VARCHAR(100), product_brand VARCHAR(100), quantity INT, unit_price DECIMAL(10,2), "
+                + "subtotal DECIMAL(10,2))");
+
+        jdbcTemplate.update("INSERT INTO products VALUES (10, 2.50, 'Milk', 'Farm', 100), (11, 4.00, 'Bread', 'Bakery', 100)");
+        jdbcTemplate.update("INSERT INTO cart VALUES (5, ?, 1)", USER_ID);
+        jdbcTemplate.update("INSERT INTO cart_items VALUES (5, 10, 2, 5.00), (5, 11, 1, 4.00)");
+
+        GroupCommitExecutor groupCommitExecutor = mock(GroupCommitExecutor.class);
+        paymentService = new PaymentService(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                mock(PaymentIdempotency.class),
+                new SnowflakeIdGenerator(1, 5000, System::currentTimeMillis),
+                groupCommitExecutor);
+        ReflectionTestUtils.setField(paymentService, "maxAttempts", 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void debitsFromTheBalanceReadWithTheCart() {
+        jdbcTemplate.update("INSERT INTO wallet VALUES (?, 20.00)", USER_ID);
+
+        Map<String, Object> result = paymentService.processPayment(USER_ID);
+
+        assertThat((BigDecimal) result.get("newBalance")).isEqualByComparingTo("11.00");
+        assertThat(balance()).isEqualByComparingTo("11.00");
+        Map<String, Object> transaction = jdbcTemplate.queryForMap("SELECT * FROM transactions");
+        assertThat((BigDecimal) transaction.get("WALLET_BALANCE_BEFORE")).isEqualByComparingTo("20.00");
+        assertThat((BigDecimal) transaction.get("WALLET_BALANCE_AFTER")).isEqualByComparingTo("11.00");
+    }
+
+    @Test
+    void balanceChangedAfterTheCartReadIsDebitedUnderALock() {
+        jdbcTemplate.update("INSERT INTO wallet VALUES (?, 20.00)", USER_ID);
+        AtomicBoolean toppedUp = new AtomicBoolean();
+        // A top-up lands between the cart read and the debit
+        doAnswer(invocation -> {
+            if (toppedUp.compareAndSet(false, true)) {
+                jdbcTemplate.execute("UPDATE wallet SET balance = balance + 5 WHERE user_id = " + USER_ID);
+            }
+            return invocation.callRealMethod();
+        }).when(jdbcTemplate).update(startsWith("UPDATE wallet SET balance = ?"), any(Object[].class));
+
+        Map<String, Object> result = paymentService.processPayment(USER_ID);
+
+        assertThat(toppedUp).isTrue();
+        assertThat((BigDecimal) result.get("newBalance")).isEqualByComparingTo("16.00");
+        assertThat(balance()).isEqualByComparingTo("16.00");
+        assertThat(jdbcTemplate.queryForObject("SELECT wallet_balance_before FROM transactions", BigDecimal.class))
+                .isEqualByComparingTo("25.00");
+    }
+
+    @Test
+    void refusesInsufficientOrMissingWallets() {
+        assertThatThrownBy(() -> paymentService.processPayment(USER_ID))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Wallet not found");
+
+        jdbcTemplate.update("INSERT INTO wallet VALUES (?, 8.99)", USER_ID);
+        assertThatThrownBy(() -> paymentService.processPayment(USER_ID))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Insufficient wallet balance");
+        assertThat(balance()).isEqualByComparingTo("8.99");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions", Integer.class)).isZero();
+    }
+
+    private BigDecimal balance() {
+        return jdbcTemplate.queryForObject("SELECT balance FROM wallet WHERE user_id = ?", BigDecimal.class, USER_ID);
+    }
+}
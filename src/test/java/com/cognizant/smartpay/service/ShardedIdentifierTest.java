@@ -0,0 +1,159 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Scatter-gather identification over in-process shards (transport=local), in best mode
+ */
+class ShardedIdentifierTest {
+
+    private static final int SHARDS = 3;
+    private static final int VIRTUAL_NODES = 128;
+    private static final int TEMPLATE_LENGTH = 200;
+    private static final String DEVICE = "scanner";
+
+    private final ShardRing ring = new ShardRing(SHARDS, VIRTUAL_NODES);
+    private final Random random = new Random(42);
+
+    private TemplateMatchEngine engine;
+    private ShardedIdentifier identifier;
+
+    @BeforeEach
+    void setUp() {
+        // No enrolled rows: every shard starts empty and is filled through added()
+        BiometricRepository biometricRepository = mock(BiometricRepository.class);
+
+        BiometricGallery gallery = new BiometricGallery(biometricRepository);
+        ReflectionTestUtils.setField(gallery, "lshTables", 8);
+        ReflectionTestUtils.setField(gallery, "lshBandSize", 6);
+        ReflectionTestUtils.setField(gallery, "shardingEnabled", true);
+        ReflectionTestUtils.setField(gallery, "shardCount", SHARDS);
+        ReflectionTestUtils.setField(gallery, "shardIndex", 0);
+        ReflectionTestUtils.setField(gallery, "shardVirtualNodes", VIRTUAL_NODES);
+        gallery.load();
+
+        engine = new TemplateMatchEngine(new ScalarTemplateMatcher(), 2, 4096, true, "best", 5, 3, 0);
+
+        identifier = new ShardedIdentifier(gallery, biometricRepository, engine, new ObjectMapper());
+        ReflectionTestUtils.setField(identifier, "enabled", true);
+        ReflectionTestUtils.setField(identifier, "shardCount", SHARDS);
+        ReflectionTestUtils.setField(identifier, "shardIndex", 0);
+        ReflectionTestUtils.setField(identifier, "virtualNodes", VIRTUAL_NODES);
+        ReflectionTestUtils.setField(identifier, "transportType", "local");
+        ReflectionTestUtils.setField(identifier, "peers", List.of());
+        ReflectionTestUtils.setField(identifier, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(identifier, "token", "");
+        ReflectionTestUtils.setField(identifier, "matchThreshold", 85);
+        ReflectionTestUtils.setField(identifier, "mode", "best");
+        ReflectionTestUtils.setField(identifier, "ambiguityMargin", 3);
+        identifier.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        identifier.stop();
+        engine.shutdown();
+    }
+
+    @Test
+    void findsTemplatesOnEveryShard() {
+        int users = 30;
+        byte[][] templates = new byte[users + 1][];
+        Set<Integer> shardsUsed = new HashSet<>();
+        for (int userId = 1; userId <= users; userId++) {
+            templates[userId] = randomTemplate();
+            assertThat(identifier.added((long) userId, (long) userId, DEVICE, templates[userId])).isTrue();
+            shardsUsed.add(ring.shardOf(userId));
+        }
+        assertThat(shardsUsed).hasSize(SHARDS);
+
+        for (int userId = 1; userId <= users; userId++) {
+            IdentificationResult result = identifier.identify(templates[userId], DEVICE);
+            assertThat(result.getStatus()).isEqualTo(IdentificationResult.Status.MATCH);
+            assertThat(result.getBest().getUserId()).isEqualTo(userId);
+            assertThat(result.getBest().getScore()).isEqualTo(100);
+            assertThat(result.isTimedOut()).isFalse();
+        }
+
+        assertThat(identifier.identify(randomTemplate(), DEVICE).getStatus())
+                .isEqualTo(IdentificationResult.Status.NO_MATCH);
+    }
+
+    @Test
+    void nearDuplicatesOnDifferentShardsAreAmbiguous() {
+        long first = 1;
+        long second = 2;
+        while (ring.shardOf(second) == ring.shardOf(first)) {
+            second++;
+        }
+
+        byte[] template = randomTemplate();
+        byte[] lookalike = Arrays.copyOf(template, template.length);
+        lookalike[0] ^= 1;
+        identifier.added(first, 100L, DEVICE, template);
+        identifier.added(second, 200L, DEVICE, lookalike);
+
+        IdentificationResult result = identifier.identify(template, DEVICE);
+        assertThat(result.getStatus()).isEqualTo(IdentificationResult.Status.AMBIGUOUS);
+        assertThat(result.getBest().getUserId()).isEqualTo(100L);
+        assertThat(result.getRunnerUp().getUserId()).isEqualTo(200L);
+    }
+
+    @Test
+    void removedTemplateNoLongerMatches() {
+        byte[] template = randomTemplate();
+        identifier.added(7L, 70L, DEVICE, template);
+        identifier.removed(7L);
+
+        assertThat(identifier.identify(template, DEVICE).getStatus())
+                .isEqualTo(IdentificationResult.Status.NO_MATCH);
+    }
+
+    @Test
+    void missingShardMakesBestModeIncomplete() {
+        IdentificationResult answered = new IdentificationResult(IdentificationResult.Status.MATCH,
+                new TemplateMatchEngine.Match(0, 1L, 10L, 95), null, 100, false, 50);
+        IdentificationResult empty = new IdentificationResult(IdentificationResult.Status.NO_MATCH,
+                null, null, 100, false, 50);
+
+        IdentificationResult merged = identifier.merge(Arrays.asList(answered, null, empty), 100);
+        assertThat(merged.getStatus()).isEqualTo(IdentificationResult.Status.INCOMPLETE);
+        assertThat(merged.getBest().getUserId()).isEqualTo(10L);
+        assertThat(merged.isTimedOut()).isTrue();
+
+        IdentificationResult complete = identifier.merge(Arrays.asList(answered, empty, empty), 100);
+        assertThat(complete.getStatus()).isEqualTo(IdentificationResult.Status.MATCH);
+        assertThat(complete.isTimedOut()).isFalse();
+    }
+
+    @Test
+    void missingShardStillMatchesInFirstMode() {
+        ReflectionTestUtils.setField(identifier, "mode", "first");
+        IdentificationResult answered = new IdentificationResult(IdentificationResult.Status.MATCH,
+                new TemplateMatchEngine.Match(0, 1L, 10L, 95), null, 100, false, 50);
+
+        IdentificationResult merged = identifier.merge(Arrays.asList(answered, null, null), 100);
+        assertThat(merged.getStatus()).isEqualTo(IdentificationResult.Status.MATCH);
+        assertThat(merged.isTimedOut()).isTrue();
+    }
+
+    private byte[] randomTemplate() {
+        byte[] template = new byte[TEMPLATE_LENGTH];
+        random.nextBytes(template);
+        return template;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void refusesInvalidNodeId() {
+        NodeIdLease lease = mock(NodeIdLease.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator("node-a", 5000, lease))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.ids.node-id");
+        assertThatThrownBy(() -> new SnowflakeIdGenerator("1024", 5000, lease))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(lease);
+    }
+
+    @Test
+    void leasesNodeIdWhenNoneIsConfigured() {
+        NodeIdLease lease = mock(NodeIdLease.class);
+        when(lease.acquire()).thenReturn(5);
+        when(lease.nodeId()).thenReturn(5L);
+
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator("  ", 5000, lease);
+        long id = generator.nextId();
+        assertThat((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID).isEqualTo(5);
+        verify(lease).acquire();
+
+        when(lease.nodeId()).thenThrow(new IllegalStateException("Node ID lease has lapsed"));
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void nodesNeverIssueTheSameId() {
+        long[] now = {SnowflakeIdGenerator.EPOCH_MS + 1000};
+        SnowflakeIdGenerator first = new SnowflakeIdGenerator(1, 5000, () -> now[0]);
+        SnowflakeIdGenerator second = new SnowflakeIdGenerator(2, 5000, () -> now[0]);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 1000 == 0) {
+                now[0]++;
+            }
+            assertThat(ids.add(first.nextId())).isTrue();
+            assertThat(ids.add(second.nextId())).isTrue();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Top-k bookkeeping: one entry per user, so another user's runner-up is never pushed out
+ */
+class TemplateMatchEngineTest {
+
+    @Test
+    void oneUsersTemplatesDoNotPushOutAnotherUsersRunnerUp() {
+        TemplateMatchEngine.TopK top = new TemplateMatchEngine.TopK(2);
+        top.add(new TemplateMatchEngine.Match(0, 100, 2, 88));
+        for (int slot = 1; slot <= 5; slot++) {
+            top.add(new TemplateMatchEngine.Match(slot, 100 + slot, 1, 89 + slot));
+        }
+
+        assertThat(top.best().getUserId()).isEqualTo(1);
+        assertThat(top.best().getScore()).isEqualTo(94);
+        assertThat(top.bestOfOtherUser(1).getUserId()).isEqualTo(2);
+        assertThat(top.bestOfOtherUser(1).getScore()).isEqualTo(88);
+    }
+
+    @Test
+    void mergeKeepsEachUsersBestScore() {
+        TemplateMatchEngine.TopK left = new TemplateMatchEngine.TopK(2);
+        left.add(new TemplateMatchEngine.Match(0, 100, 1, 90));
+        left.add(new TemplateMatchEngine.Match(1, 101, 2, 70));
+        TemplateMatchEngine.TopK right = new TemplateMatchEngine.TopK(2);
+        right.add(new TemplateMatchEngine.Match(2, 102, 1, 95));
+        right.add(new TemplateMatchEngine.Match(3, 103, 3, 60));
+
+        left.addAll(right);
+
+        assertThat(left.best().getScore()).isEqualTo(95);
+        assertThat(left.bestOfOtherUser(1).getUserId()).isEqualTo(2);
+        // User 1 kept one entry, so user 2 still outranks user 3
+        assertThat(left.bestOfOtherUser(2).getScore()).isEqualTo(95);
+    }
+}
@@ -0,0 +1,134 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+/**
+ * Scores every matcher against a plain reference over random templates.
+ *
+ * Lengths cover every value up to a few SIMD registers and 64-bit words, so each
+ * possible tail length after the vector and word loops is exercised, plus random
+ * lengths up to the largest templates. Stored templates sit at random offsets, on
+ * the heap and in direct buffers like a mapped gallery snapshot.
+ */
+class TemplateMatcherDifferentialTest {
+
+    private static final String VECTOR_MATCHER = "com.cognizant.smartpay.service.VectorTemplateMatcher";
+    private static final int RANDOM_ROUNDS = 2000;
+    private static final int MAX_LENGTH = 4096;
+
+    // 64-byte registers (AVX-512) times two, plus a few bytes of tail
+    private static final int EXHAUSTIVE_LENGTHS = 136;
+
+    @Test
+    void scalarMatchesByteEqualityReference() {
+        ScalarTemplateMatcher scalar = new ScalarTemplateMatcher();
+        forEachCase((template, data, offset, length) -> {
+            int expected = byteEqualityScore(template, data, offset, length);
+            assertScores(scalar, template, data, offset, length, expected);
+        });
+    }
+
+    @Test
+    void vectorMatchesScalar() throws ReflectiveOperationException {
+        assumeThat(ModuleLayer.boot().findModule("jdk.incubator.vector"))
+                .as("jdk.incubator.vector module (run with -P vector)")
+                .isPresent();
+        TemplateMatcher vector = (TemplateMatcher) Class.forName(VECTOR_MATCHER)
+                .getDeclaredConstructor()
+                .newInstance();
+        ScalarTemplateMatcher scalar = new ScalarTemplateMatcher();
+
+        forEachCase((template, data, offset, length) ->
+                assertScores(vector, template, data, offset, length, scalar.score(template, data, offset, length)));
+    }
+
+    @Test
+    void packedMatchesBitLevelReference() {
+        PackedTemplateMatcher raw = new PackedTemplateMatcher(PackedTemplateMatcher.Calibration.NONE);
+        PackedTemplateMatcher chance = new PackedTemplateMatcher(PackedTemplateMatcher.Calibration.CHANCE);
+
+        forEachCase((template, data, offset, length) -> {
+            double similarity = 1.0 - (double) differingBits(template, data, offset, length) / (length * 8L);
+            assertScores(raw, template, data, offset, length, (int) (similarity * 100));
+
+            double calibrated = (similarity - PackedTemplateMatcher.CHANCE_BIT_AGREEMENT)
+                    / (1.0 - PackedTemplateMatcher.CHANCE_BIT_AGREEMENT);
+            assertScores(chance, template, data, offset, length, (int) (Math.max(0.0, calibrated) * 100));
+        });
+    }
+
+    @Test
+    void templatesOfAnotherLengthNeverMatch() {
+        byte[] template = new byte[100];
+        byte[] data = new byte[200];
+        TemplateMatcher[] matchers = {
+                new ScalarTemplateMatcher(),
+                new PackedTemplateMatcher(PackedTemplateMatcher.Calibration.NONE),
+                new PackedTemplateMatcher(PackedTemplateMatcher.Calibration.CHANCE)
+        };
+        for (TemplateMatcher matcher : matchers) {
+            assertThat(matcher.score(template, data, 0, 99)).as(matcher.name()).isZero();
+            assertThat(matcher.score(template, ByteBuffer.wrap(data), 0, 101)).as(matcher.name()).isZero();
+            assertThat(matcher.score(null, data, 0, 100)).as(matcher.name()).isZero();
+        }
+    }
+
+    private static void forEachCase(Case check) {
+        Random random = new Random(20240101L);
+        IntStream lengths = IntStream.concat(
+                IntStream.rangeClosed(1, EXHAUSTIVE_LENGTHS),
+                random.ints(RANDOM_ROUNDS, 1, MAX_LENGTH + 1));
+
+        lengths.forEach(length -> {
+            int offset = random.nextInt(64);
+            byte[] template = new byte[length];
+            byte[] data = new byte[offset + length + random.nextInt(16)];
+            random.nextBytes(template);
+            random.nextBytes(data);
+
+            // Copy a random share of the template so scores cover the whole 0-100 range
+            System.arraycopy(template, 0, data, offset, random.nextInt(length + 1));
+            check.run(template, data, offset, length);
+        });
+    }
+
+    private static void assertScores(TemplateMatcher matcher, byte[] template, byte[] data, int offset, int length,
+                                     int expected) {
+        String description = matcher.name() + " length " + length + " offset " + offset;
+        assertThat(matcher.score(template, data, offset, length)).as(description).isEqualTo(expected);
+        assertThat(matcher.score(template, ByteBuffer.wrap(data), offset, length))
+                .as(description + " heap buffer").isEqualTo(expected);
+        assertThat(matcher.score(template, ByteBuffer.allocateDirect(data.length).put(data), offset, length))
+                .as(description + " direct buffer").isEqualTo(expected);
+    }
+
+    private static int byteEqualityScore(byte[] template, byte[] data, int offset, int length) {
+        int matches = 0;
+        for (int i = 0; i < length; i++) {
+            if (template[i] == data[offset + i]) {
+                matches++;
+            }
+        }
+        return (int) ((double) matches / length * 100);
+    }
+
+    private static long differingBits(byte[] template, byte[] data, int offset, int length) {
+        long differing = 0;
+        for (int i = 0; i < length; i++) {
+            differing += Integer.bitCount((template[i] ^ data[offset + i]) & 0xFF);
+        }
+        return differing;
+    }
+
+    @FunctionalInterface
+    private interface Case {
+        void run(byte[] template, byte[] data, int offset, int length);
+    }
+}
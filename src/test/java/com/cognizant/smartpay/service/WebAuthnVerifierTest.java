@@ -0,0 +1,130 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.exception.AuthenticationFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Assertions signed with stored SubjectPublicKeyInfo keys, verified by webauthn-server-core
+ */
+class WebAuthnVerifierTest {
+
+    private static final String RP_ID = "smartpay.example";
+    private static final String ORIGIN = "https://smartpay.example";
+    private static final String CREDENTIAL_ID = "AX7g9k3mP";
+    private static final long USER_ID = 42L;
+    private static final String CHALLENGE = "q2Xv0n8kPq2Xv0n8kPq2Xv0n8kPq2Xv0n8kPq2Xv0n";
+
+    @Test
+    void verifiesEcRsaAndEd25519Assertions() throws Exception {
+        KeyPair ed25519 = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        for (KeyPair keyPair : List.of(ecKeyPair(), rsaKeyPair(), ed25519)) {
+            WebAuthnVerifier verifier = verifierFor(keyPair);
+            byte[] authenticatorData = authenticatorData(RP_ID, 0x05, 7);
+            byte[] clientData = clientData("webauthn.get", ORIGIN);
+
+            String challenge = verifier.verify(CREDENTIAL_ID, USER_ID, authenticatorData, clientData,
+                    sign(keyPair, authenticatorData, clientData));
+
+            assertThat(challenge).isEqualTo(CHALLENGE);
+            assertThat(WebAuthnVerifier.signCount(authenticatorData)).isEqualTo(7);
+        }
+    }
+
+    @Test
+    void rejectsTamperedAssertions() throws Exception {
+        KeyPair keyPair = ecKeyPair();
+        WebAuthnVerifier verifier = verifierFor(keyPair);
+        byte[] authenticatorData = authenticatorData(RP_ID, 0x05, 1);
+        byte[] clientData = clientData("webauthn.get", ORIGIN);
+        byte[] signature = sign(keyPair, authenticatorData, clientData);
+
+        byte[] otherOrigin = clientData("webauthn.get", "https://evil.example");
+        assertRejected(verifier, authenticatorData, otherOrigin, sign(keyPair, authenticatorData, otherOrigin));
+
+        byte[] otherRp = authenticatorData("evil.example", 0x05, 1);
+        assertRejected(verifier, otherRp, clientData, sign(keyPair, otherRp, clientData));
+
+        byte[] notVerified = authenticatorData(RP_ID, 0x01, 1);
+        assertRejected(verifier, notVerified, clientData, sign(keyPair, notVerified, clientData));
+
+        byte[] registration = clientData("webauthn.create", ORIGIN);
+        assertRejected(verifier, authenticatorData, registration, sign(keyPair, authenticatorData, registration));
+
+        assertRejected(verifier, authenticatorData(RP_ID, 0x05, 2), clientData, signature);
+
+        // Another user's credential
+        assertThatThrownBy(() -> verifier.verify(CREDENTIAL_ID, USER_ID + 1, authenticatorData, clientData, signature))
+                .isInstanceOf(AuthenticationFailedException.class);
+    }
+
+    @Test
+    void refusesToStartWithoutAllowedOrigins() {
+        assertThatThrownBy(() -> new WebAuthnVerifier(id -> Optional.empty(), RP_ID, List.of(" "), true))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.webauthn.allowed-origins");
+    }
+
+    private static WebAuthnVerifier verifierFor(KeyPair keyPair) throws Exception {
+        CredentialCache.Credential credential = new CredentialCache.Credential(1L, USER_ID,
+                WebAuthnPublicKey.parse(keyPair.getPublic().getEncoded()), 0);
+        return new WebAuthnVerifier(id -> CREDENTIAL_ID.equals(id) ? Optional.of(credential) : Optional.empty(),
+                RP_ID, List.of(ORIGIN), true);
+    }
+
+    private static void assertRejected(WebAuthnVerifier verifier, byte[] authenticatorData, byte[] clientData,
+                                       byte[] signature) {
+        assertThatThrownBy(() -> verifier.verify(CREDENTIAL_ID, USER_ID, authenticatorData, clientData, signature))
+                .isInstanceOf(AuthenticationFailedException.class);
+    }
+
+    // rpIdHash || flags || signCount
+    private static byte[] authenticatorData(String rpId, int flags, int signCount) throws Exception {
+        byte[] data = new byte[37];
+        byte[] rpIdHash = MessageDigest.getInstance("SHA-256").digest(rpId.getBytes(StandardCharsets.UTF_8));
+        System.arraycopy(rpIdHash, 0, data, 0, rpIdHash.length);
+        data[32] = (byte) flags;
+        data[36] = (byte) signCount;
+        return data;
+    }
+
+    private static byte[] clientData(String type, String origin) {
+        return ("{\"type\":\"" + type + "\",\"challenge\":\"" + CHALLENGE + "\",\"origin\":\"" + origin + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] sign(KeyPair keyPair, byte[] authenticatorData, byte[] clientData) throws Exception {
+        Signature signer = Signature.getInstance(switch (keyPair.getPrivate().getAlgorithm()) {
+            case "EC" -> "SHA256withECDSA";
+            case "RSA" -> "SHA256withRSA";
+            default -> "Ed25519";
+        });
+        signer.initSign(keyPair.getPrivate());
+        signer.update(authenticatorData);
+        signer.update(MessageDigest.getInstance("SHA-256").digest(clientData));
+        return signer.sign();
+    }
+
+    private static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    private static KeyPair rsaKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,83 @@
+package com.cognizant.smartpay.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Byte-equality matcher on the Vector API.
+ *
+ * Compares a full SIMD register of bytes per step and counts equal lanes from the
+ * comparison mask; the tail that does not fill a register is compared in scalar
+ * code. Returns exactly the same scores as {@link ScalarTemplateMatcher}.
+ *
+ * Needs the jdk.incubator.vector module (--add-modules jdk.incubator.vector), so it
+ * is only compiled with the vector profile; only load this class reflectively,
+ * after checking that the module is present.
+ */
+public class VectorTemplateMatcher implements TemplateMatcher {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int score(byte[] template, byte[] data, int offset, int length) {
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        int matches = 0;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            ByteVector captured = ByteVector.fromArray(SPECIES, template, i);
+            ByteVector stored = ByteVector.fromArray(SPECIES, data, offset + i);
+            matches += captured.compare(VectorOperators.EQ, stored).trueCount();
+        }
+        for (; i < length; i++) {
+            if (template[i] == data[offset + i]) {
+                matches++;
+            }
+        }
+
+        return (int) ((double) matches / length * 100);
+    }
+
+    @Override
+    public int score(byte[] template, ByteBuffer data, int offset, int length) {
+        if (template == null || data == null) {
+            return 0;
+        }
+
+        if (template.length != length || length <= 0) {
+            return 0;
+        }
+
+        int matches = 0;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            ByteVector captured = ByteVector.fromArray(SPECIES, template, i);
+            ByteVector stored = ByteVector.fromByteBuffer(SPECIES, data, offset + i, ByteOrder.nativeOrder());
+            matches += captured.compare(VectorOperators.EQ, stored).trueCount();
+        }
+        for (; i < length; i++) {
+            if (template[i] == data.get(offset + i)) {
+                matches++;
+            }
+        }
+
+        return (int) ((double) matches / length * 100);
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+}